@@ -0,0 +1,95 @@
+package com.luffbox.smoothsleep;
+
+import com.luffbox.smoothsleep.lib.ConfigHelper;
+import com.luffbox.smoothsleep.lib.MiscUtils;
+import com.luffbox.smoothsleep.lib.TimerStore;
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What the sleep tick does for every player in a World: counting who's asleep, and
+ * advancing each sleeper's timers one at a time, as on Folia, or as one batch. Half
+ * of the players are in bed, in a booted plugin with the default config.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlayersBench {
+
+	@Param({ "10", "100", "1000" })
+	public int players;
+
+	private NightHarness harness;
+	private WorldData wd;
+	private VitalsEngine vitals;
+	private final List<PlayerData> sleepers = new ArrayList<>();
+	private double curve;
+	private TimerStore store;
+	private int[] slots;
+
+	@Setup
+	public void setup() {
+		harness = new NightHarness();
+		wd = harness.getWorldData();
+		vitals = wd.getVitals();
+		curve = wd.getSettings().getDouble(ConfigHelper.WorldSettingKey.SPEED_CURVE);
+		for (int i = 0; i < players; i++) {
+			NightHarness.HarnessPlayer plr = harness.join();
+			if (i % 2 == 0 && harness.enterBed(plr)) { sleepers.add(harness.getPlugin().data.getPlayerData(plr)); }
+		}
+		store = new TimerStore();
+		slots = new int[sleepers.size()];
+		for (int i = 0; i < slots.length; i++) { slots[i] = store.allocate(); }
+	}
+
+	@TearDown
+	public void tearDown() { harness.close(); }
+
+	@Benchmark
+	public double sleepRatio() { return wd.getSleepRatio(); }
+
+	@Benchmark
+	public double calcSpeed() { return MiscUtils.calcSpeed(curve, wd.getSleepRatio()); }
+
+	@Benchmark
+	public void sleepers(Blackhole bh) {
+		for (Player plr : wd.getSleepers()) { bh.consume(plr); }
+	}
+
+	@Benchmark
+	public Set<PlayerData> sleeperData() { return wd.getSleeperData(); }
+
+	@Benchmark
+	public void tickTimers() {
+		for (PlayerData pd : sleepers) { pd.tickTimers(1.0); }
+	}
+
+	@Benchmark
+	public void vitalsBatch() {
+		for (PlayerData pd : sleepers) { vitals.add(pd); }
+		vitals.tick(1.0);
+	}
+
+	@Benchmark
+	public void incAll() { store.incAll(slots, slots.length, 1.0); }
+}
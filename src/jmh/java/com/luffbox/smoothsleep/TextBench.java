@@ -0,0 +1,86 @@
+package com.luffbox.smoothsleep;
+
+import com.luffbox.smoothsleep.lib.ConfigHelper;
+import com.luffbox.smoothsleep.lib.MiscUtils;
+import com.luffbox.smoothsleep.lib.hooks.PlaceholderHelper;
+import com.luffbox.smoothsleep.lib.template.PlayerSnapshot;
+import com.luffbox.smoothsleep.lib.template.RenderContext;
+import com.luffbox.smoothsleep.lib.template.Template;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders a World's titles the old way, with a {@link MiscUtils#sub} substitutor built
+ * for every message, and the way SmoothSleep does now, with its compiled templates, as
+ * well as translating their colour codes. All use the default config of a booted plugin
+ * and a player who has joined.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextBench {
+
+	@Param({ "ACTIONBAR_TITLE", "BOSSBAR_TITLE", "SLEEP_TITLE" })
+	public String key;
+
+	private NightHarness harness;
+	private World w;
+	private Player plr;
+	private String raw, source;
+	private Template template;
+	private PlaceholderHelper placeholders;
+	private RenderContext ctx;
+	private PlayerSnapshot snap;
+	private int i = 0;
+
+	@Setup
+	public void setup() {
+		harness = new NightHarness();
+		plr = harness.join();
+		SmoothSleep pl = harness.getPlugin();
+		ConfigHelper.WorldSettings ws = harness.getWorldData().getSettings();
+		w = ws.getWorld();
+		ConfigHelper.WorldSettingKey setting = ConfigHelper.WorldSettingKey.valueOf(key);
+		raw = ws.getString(setting);
+		source = MiscUtils.trans(raw);
+		template = ws.getTemplate(setting);
+		placeholders = pl.data.placeholders;
+		ctx = new RenderContext(pl.data.userHelper);
+		snap = PlayerSnapshot.capture(plr, pl.data.userHelper);
+	}
+
+	@TearDown
+	public void tearDown() { harness.close(); }
+
+	@Benchmark
+	public String substitutor() {
+		int n = i++;
+		return MiscUtils.sub(w, plr, n & 7, 8, 1.0 + (n & 63), n, plr.getName()).replace(source);
+	}
+
+	@Benchmark
+	public String template() {
+		int n = i++;
+		return placeholders.replace(template, ctx.set(w, plr, n & 7, 8, 1.0 + (n & 63), n, 13000 + (n & 8191), 10000).use(snap));
+	}
+
+	@Benchmark
+	public String trans() { return MiscUtils.trans(raw); }
+}
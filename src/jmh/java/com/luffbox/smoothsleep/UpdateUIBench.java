@@ -0,0 +1,52 @@
+package com.luffbox.smoothsleep;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PlayerData#updateUI(SleepSnapshot)} for a player in bed at night, with the
+ * default config: the titles, action bar and boss bar rendered and handed to the
+ * player. The harness's players only count what they're sent.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UpdateUIBench {
+
+	private NightHarness harness;
+	private PlayerData pd;
+	private SleepSnapshot snap;
+
+	@Setup
+	public void setup() {
+		harness = new NightHarness();
+		NightHarness.HarnessPlayer plr = harness.join();
+		harness.join(); // Someone awake, so the night isn't skipped
+		while (!WorldData.isNight(harness.getWorld().getTime())) { harness.tick(); }
+		harness.enterBed(plr);
+		harness.tick();
+		pd = harness.getPlugin().data.getPlayerData(plr);
+		// Shared by every call, as the sleep tick does. Taken once, so the night doesn't move on
+		snap = harness.getWorldData().snapshot();
+	}
+
+	@TearDown
+	public void tearDown() { harness.close(); }
+
+	@Benchmark
+	public void updateUI() { pd.updateUI(snap); }
+}
@@ -0,0 +1,42 @@
+package com.luffbox.smoothsleep.lib.particle;
+
+import org.bukkit.Particle;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.util.List;
+
+/**
+ * An emitter that doesn't send anything, for timing a mesh's math and the
+ * emitter's de-duplication on their own. What it would have sent isn't counted
+ * by the {@link com.luffbox.smoothsleep.lib.profiler.TickProfiler}.
+ * @see ParticleBench
+ */
+public final class BenchEmitter extends ParticleEmitter {
+
+	private long particles = 0;
+
+	public BenchEmitter() { super(false); }
+
+	/**
+	 * Starts a new tick for one emission, the same as the engine does before spawning it.
+	 * @param type The particle
+	 * @param w The World the viewers are in
+	 * @param viewers Who the particles would be sent to
+	 */
+	public void begin(Particle type, World w, List<Player> viewers) {
+		newTick();
+		reset(type, w, viewers);
+	}
+
+	/**
+	 * @return Particles that would have been sent so far
+	 */
+	public long getParticles() { return particles; }
+
+	@Override
+	protected void send(Particle type, World w, List<Player> receivers, double x, double y, double z,
+						int count, double ox, double oy, double oz) {
+		particles += (long) count * receivers.size();
+	}
+}
@@ -0,0 +1,75 @@
+package com.luffbox.smoothsleep.lib.particle;
+
+import com.luffbox.smoothsleep.NightHarness;
+import com.luffbox.smoothsleep.lib.ConfigHelper;
+import org.bukkit.Particle;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.luffbox.smoothsleep.lib.ConfigHelper.WorldSettingKey.*;
+
+/**
+ * A step of one morning emission as the particle engine spawns it each tick: the
+ * cached mesh, then the emitter checking each point against what the viewer has been
+ * sent this tick. Nothing is sent, so only the math and de-duplication are timed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParticleBench {
+
+	@Param({ "RANDOM", "CIRCLE", "SPIRAL" })
+	public String pattern;
+
+	private NightHarness harness;
+	private final BenchEmitter emitter = new BenchEmitter();
+	private ParticlePattern pp;
+	private Particle type;
+	private World w;
+	private List<Player> viewers;
+	private double radius;
+	private int points, i = 0;
+
+	@Setup
+	public void setup() {
+		harness = new NightHarness();
+		ConfigHelper.WorldSettings ws = harness.getWorldData().getSettings();
+		pp = ParticlePatterns.get(pattern);
+		type = ws.getParticle(PARTICLE_TYPE);
+		w = ws.getWorld();
+		viewers = Collections.singletonList(harness.join());
+		radius = ws.getDouble(PARTICLE_RADIUS);
+		points = Math.max(1, pp.getPoints());
+	}
+
+	@TearDown
+	public void tearDown() { harness.close(); }
+
+	@Benchmark
+	public long spawn() {
+		int n = i++;
+		ParticleMesh mesh = ParticlePatterns.mesh(pp, radius, points);
+		emitter.begin(type, w, viewers);
+		mesh.spawn(emitter, 0.5, 64.0, 0.5, pp.spins() ? (n & 63) / 32.0 : 0, n % Math.max(1, mesh.getFrames()));
+		return emitter.getParticles();
+	}
+}
@@ -0,0 +1,175 @@
+package com.luffbox.smoothsleep;
+
+import com.luffbox.smoothsleep.lib.ConfigHelper;
+import com.luffbox.smoothsleep.lib.Purgeable;
+import com.luffbox.smoothsleep.lib.profiler.Phase;
+import com.luffbox.smoothsleep.lib.profiler.TickProfiler;
+import com.luffbox.smoothsleep.lib.scheduler.TaskHandle;
+import com.luffbox.smoothsleep.lib.template.PlayerSnapshot;
+import com.luffbox.smoothsleep.lib.template.RenderContext;
+import com.luffbox.smoothsleep.lib.template.Template;
+import com.luffbox.smoothsleep.tasks.RenderTask;
+import org.bukkit.World;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders the titles, action bar and boss bar text that depend on the player on
+ * worker threads. The thread that owns the player captures a {@link PlayerSnapshot},
+ * the text is rendered from it on a worker, and the result is handed back through
+ * a lock-free queue to be sent on a later tick. Only the capture and the send
+ * happen on the server's threads.
+ * <p>
+ * Used when 'async-rendering.enabled' is on and the placeholder helper says it's
+ * thread safe. 'async-rendering.threads' sets the size of the worker pool, or 0
+ * to use one less than the number of cores, up to 4.
+ * @see PlayerData#updateUIAsync(SleepSnapshot)
+ */
+public class AsyncRenderer implements Purgeable {
+
+	private static final int MAX_AUTO_THREADS = 4;
+
+	private final SmoothSleep pl;
+	private final Queue<Job> done = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger pending = new AtomicInteger();
+	private final ThreadLocal<RenderContext> contexts = ThreadLocal.withInitial(() -> new RenderContext(null));
+	private ExecutorService workers;
+	private TaskHandle task;
+
+	public AsyncRenderer(SmoothSleep plugin) { pl = plugin; }
+
+	/**
+	 * @return True if text can be rendered off the server's threads
+	 */
+	public boolean isEnabled() {
+		return pl.data.config.getBoolean(ConfigHelper.GlobalSettingKey.ASYNC_RENDER) && pl.data.placeholders.isThreadSafe();
+	}
+
+	/**
+	 * Queues the player's templates to be rendered on a worker thread. Call from the
+	 * thread that owns the player.
+	 * @param pd The player's data
+	 * @param wd The World the snapshot is of
+	 * @param snap The snapshot to render for
+	 * @param keys The templates to render
+	 * @param seq The player's update number, so older results can be dropped
+	 * @return False if the text couldn't be queued and should be rendered right away
+	 */
+	public boolean submit(PlayerData pd, WorldData wd, SleepSnapshot snap, List<ConfigHelper.WorldSettingKey> keys, long seq) {
+		Template[] templates = new Template[keys.size()];
+		for (int i = 0; i < templates.length; i++) { templates[i] = wd.getSettings().getTemplate(keys.get(i)); }
+		Job job = new Job(pd, wd, snap, keys, templates, PlayerSnapshot.capture(pd.getPlayer(), pl.data.userHelper),
+				(int) pd.getTimers().getSlpt(), seq);
+		pending.incrementAndGet();
+		try {
+			workers().execute(() -> render(job));
+		} catch (RejectedExecutionException e) {
+			pending.decrementAndGet();
+			return false;
+		}
+		start();
+		return true;
+	}
+
+	private void render(Job job) {
+		long start = TickProfiler.start();
+		RenderContext ctx = contexts.get();
+		SleepSnapshot snap = job.snap;
+		try {
+			for (int i = 0; i < job.templates.length; i++) {
+				ctx.set(job.w, job.pd.getPlayer(), snap.getSleepers(), snap.getWakers(), snap.getTimescale(), job.ticksSlept,
+						snap.getTime(), snap.getTicksToMorning()).use(job.ps);
+				job.text.put(job.keys.get(i), pl.data.placeholders.replace(job.templates[i], ctx));
+			}
+		} catch (Exception e) {
+			// Anything missing is rendered on the player's thread when it's delivered
+			SmoothSleep.logWarning("Failed to render text for " + job.ps.getName() + ": " + e.getMessage());
+		}
+		TickProfiler.stop(Phase.RENDER, job.w, start);
+		done.add(job);
+	}
+
+	/**
+	 * Hands every finished result to the thread that owns its player.
+	 */
+	public void tick() {
+		Job job;
+		while ((job = done.poll()) != null) {
+			pending.decrementAndGet();
+			final Job j = job;
+			pl.scheduler.runFor(j.pd.getPlayer(), () -> j.pd.deliverUI(j.wd, j.snap, j.text, j.seq));
+		}
+		stopIfIdle();
+	}
+
+	private synchronized void start() {
+		if (task == null) { task = new RenderTask(this).runTimer(pl.scheduler, 1L, 1L); }
+	}
+
+	// Checked under the same lock as start(), so a job submitted meanwhile restarts the task
+	private synchronized void stopIfIdle() {
+		if (pending.get() > 0) return;
+		if (task != null) { task.cancel(); }
+		task = null;
+	}
+
+	private synchronized ExecutorService workers() {
+		if (workers == null) {
+			int threads = pl.data.config.getInt(ConfigHelper.GlobalSettingKey.ASYNC_RENDER_THREADS);
+			if (threads <= 0) { threads = Math.max(1, Math.min(MAX_AUTO_THREADS, Runtime.getRuntime().availableProcessors() - 1)); }
+			AtomicInteger count = new AtomicInteger();
+			workers = Executors.newFixedThreadPool(threads, r -> {
+				Thread t = new Thread(r, "SmoothSleep-Render-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return workers;
+	}
+
+	/**
+	 * Stops the workers. Text that was already being rendered is still handed back,
+	 * and dropped by the players as it's for data that was purged.
+	 */
+	@Override
+	public synchronized void purgeData() {
+		if (workers != null) { pending.addAndGet(-workers.shutdownNow().size()); } // These will never finish
+		workers = null;
+		stopIfIdle();
+	}
+
+	private static class Job {
+		private final PlayerData pd;
+		private final WorldData wd;
+		private final World w;
+		private final SleepSnapshot snap;
+		private final List<ConfigHelper.WorldSettingKey> keys;
+		private final Template[] templates;
+		private final PlayerSnapshot ps;
+		private final int ticksSlept;
+		private final long seq;
+		// Written by the worker, read after the hand-off through the queue
+		private final Map<ConfigHelper.WorldSettingKey, String> text = new EnumMap<>(ConfigHelper.WorldSettingKey.class);
+
+		private Job(PlayerData pd, WorldData wd, SleepSnapshot snap, List<ConfigHelper.WorldSettingKey> keys,
+					Template[] templates, PlayerSnapshot ps, int ticksSlept, long seq) {
+			this.pd = pd;
+			this.wd = wd;
+			this.w = wd.getWorld();
+			this.snap = snap;
+			this.keys = keys;
+			this.templates = templates;
+			this.ps = ps;
+			this.ticksSlept = ticksSlept;
+			this.seq = seq;
+		}
+	}
+}
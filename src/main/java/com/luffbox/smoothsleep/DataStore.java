@@ -3,34 +3,60 @@ package com.luffbox.smoothsleep;
 import com.luffbox.smoothsleep.lib.ConfigHelper;
 import com.luffbox.smoothsleep.lib.LoggablePlugin;
 import com.luffbox.smoothsleep.lib.Purgeable;
+import com.luffbox.smoothsleep.lib.TimerStore;
 import com.luffbox.smoothsleep.lib.actionbar.ActionBarHelper;
 import com.luffbox.smoothsleep.lib.actionbar.NmsActionBarHelper;
 import com.luffbox.smoothsleep.lib.actionbar.PaperActionHelper;
 import com.luffbox.smoothsleep.lib.actionbar.SpigotActionBarHelper;
 import com.luffbox.smoothsleep.lib.hooks.*;
+import com.luffbox.smoothsleep.lib.morning.MorningEffects;
+import com.luffbox.smoothsleep.lib.particle.ParticleEngine;
+import com.luffbox.smoothsleep.lib.reward.RewardQueue;
+import com.luffbox.smoothsleep.lib.scheduler.TaskHandle;
+import com.luffbox.smoothsleep.lib.trace.TraceRecorder;
+import com.luffbox.smoothsleep.tasks.PermRefreshTask;
 import org.bukkit.World;
 import org.bukkit.entity.Player;
 import org.bukkit.plugin.Plugin;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Holds SmoothSleep's World and player data. The maps are concurrent, as on
+ * Folia players join and change Worlds on their own region's thread.
+ */
 public class DataStore implements Purgeable {
 
 	private final SmoothSleep pl;
-	private final Map<World, WorldData> worldData = new HashMap<>();
-	private final Map<Player, PlayerData> playerData = new HashMap<>();
+	private final Map<World, WorldData> worldData = new ConcurrentHashMap<>();
+	private final Map<Player, PlayerData> playerData = new ConcurrentHashMap<>();
 
-	private boolean pluginEnabled = true;
+	private volatile boolean pluginEnabled = true;
+	private TaskHandle permRefreshTask;
 
 	public ConfigHelper config;
 	public UserHelper userHelper;
 	public ActionBarHelper actionBarHelper;
 	public PlaceholderHelper placeholders;
 	public double baseTimeSpeed = 1.0;
+	public final TimerStore timerStore = new TimerStore();
+	public final ParticleEngine particles;
+	public final MorningEffects morningEffects;
+	public final WakeQueue wakeQueue;
+	public final RewardQueue rewards;
+	public final AsyncRenderer renderer;
+	public final TraceRecorder traces;
 
 	public DataStore(SmoothSleep plugin) {
 		pl = plugin;
+		particles = new ParticleEngine(pl);
+		morningEffects = new MorningEffects(pl);
+		wakeQueue = new WakeQueue(pl);
+		rewards = new RewardQueue(pl);
+		renderer = new AsyncRenderer(pl);
+		traces = new TraceRecorder(pl);
 		config = new ConfigHelper(pl);
 		userHelper = new DefUserHelper();
 		placeholders = new DefPlaceholderHelper(pl);
@@ -60,8 +86,14 @@ public class DataStore implements Purgeable {
 		config.worlds.forEach((w, ws) -> {
 			WorldData wd = new WorldData(pl, w, ws);
 			worldData.put(w, wd);
-			wd.getPlayers().forEach(plr -> playerData.put(plr, new PlayerData(pl, plr)));
+			for (Player plr : w.getPlayers()) {
+				if (!plr.hasMetadata("NPC")) { playerData.put(plr, new PlayerData(pl, plr)); }
+			}
+			wd.getSleepIndex().reconcile();
+			wd.checkNightBoundary();
 		});
+		int permRefresh = config.getInt(ConfigHelper.GlobalSettingKey.PERM_REFRESH_TICKS);
+		if (permRefresh > 0) { permRefreshTask = new PermRefreshTask(pl).runTimer(pl.scheduler, permRefresh, permRefresh); }
 	}
 
 	public void reload() {
@@ -72,34 +104,37 @@ public class DataStore implements Purgeable {
 
 	public boolean worldEnabled(World w) { return config.worlds.containsKey(w); }
 
-	public PlayerData addPlayer(Player plr) {
-		PlayerData pd;
-		if (!playerData.containsKey(plr)) {
-			pd = new PlayerData(pl, plr);
-			playerData.put(plr, pd);
-		} else { pd = playerData.get(plr); }
-		return pd;
-	}
+	public PlayerData addPlayer(Player plr) { return playerData.computeIfAbsent(plr, p -> new PlayerData(pl, p)); }
 
 	public void removePlayer(Player plr) {
 		PlayerData pd = playerData.remove(plr);
 		if (pd != null) pd.purgeData();
 	}
 
+	public void updatePerms() { playerData.values().forEach(pd -> pl.scheduler.runFor(pd.getPlayer(), pd::updatePerms)); }
+
 	public boolean isPluginEnabled() { return pluginEnabled; }
 	public void setPluginEnabled(boolean enabled) {
 		pluginEnabled = enabled;
-		pl.getServer().getScheduler().runTaskLater(pl, () -> {
+		pl.scheduler.runLater(() -> {
 			for (WorldData wd : worldData.values()) {
 				for (PlayerData pd : wd.getPlayerData()) {
-					pd.clearActionBar();
-					pd.clearTitles();
-					pd.hideBossBar();
+					pl.scheduler.runFor(pd.getPlayer(), () -> {
+						pd.clearActionBar();
+						pd.clearTitles();
+						pd.hideBossBar();
+					});
 				}
 			}
 		}, 1L);
 	}
 
+	/**
+	 * Makes every World check its night boundary on the next tick, for when time
+	 * has been changed in a way that invalidates the scheduled checks.
+	 */
+	public void scheduleBoundaryChecks() { worldData.values().forEach(wd -> wd.scheduleBoundaryCheck(1)); }
+
 	public Map<World, WorldData> getWorldData() { return new HashMap<>(worldData); }
 	public WorldData getWorldData(World w) { return w == null ? null : worldData.get(w); }
 	public WorldData getWorldData(Player p) { return p == null ? null : worldData.get(p.getWorld()); }
@@ -107,6 +142,16 @@ public class DataStore implements Purgeable {
 
 	@Override
 	public void purgeData() {
+		wakeQueue.purgeData(); // Before the player and world data it uses is purged
+		rewards.purgeData(); // After waking, which can queue more rewards
+		particles.purgeData();
+		morningEffects.purgeData();
+		renderer.purgeData();
+		traces.purgeData();
+		if (permRefreshTask != null) {
+			permRefreshTask.cancel();
+			permRefreshTask = null;
+		}
 		if (!worldData.isEmpty()) {
 			worldData.values().forEach(WorldData::purgeData);
 			worldData.clear();
@@ -0,0 +1,161 @@
+package com.luffbox.smoothsleep;
+
+import com.luffbox.smoothsleep.lib.CompiledSettings;
+import com.luffbox.smoothsleep.lib.ConfigHelper;
+import com.luffbox.smoothsleep.lib.MiscUtils;
+
+/**
+ * Works out how fast the night passes in a World. The night speed only depends
+ * on how many players are sleeping and awake and on the World's settings, so it's
+ * only worked out again when one of those changes instead of on every tick.
+ * <p>
+ * The sleep tick updates the plan on the global thread, while on Folia the UI
+ * reads it from players' region threads, so each plan is an immutable object
+ * swapped in through a volatile field, and readers always see a whole one.
+ * <p>
+ * The static methods are the sleep tick's math on its own, shared with the
+ * {@link NightSim} so the model can't drift from what {@link WorldData#timestep()} does.
+ */
+public class NightPlan {
+
+	private final ConfigHelper.WorldSettings ws;
+	private volatile Plan current = new Plan(null, -1, -1, false, 0.0);
+
+	public NightPlan(ConfigHelper.WorldSettings settings) { ws = settings; }
+
+	/**
+	 * Recomputes the night speed if the sleepers, wakers or settings have changed.
+	 * @param sleepers Players sleeping
+	 * @param wakers Players awake and not ignored
+	 * @return True if the plan changed
+	 */
+	public boolean update(int sleepers, int wakers) {
+		CompiledSettings cs = ws.getCompiled();
+		Plan plan = current;
+		if (cs == plan.plannedFor && sleepers == plan.sleepers && wakers == plan.wakers) return false;
+		// Two threads updating at once work out the same plan, so whichever lands last is fine
+		current = new Plan(cs, sleepers, wakers, isInstant(ws.getBoolean(ConfigHelper.WorldSettingKey.INSTANT_DAY), wakers),
+				multiplier(ws.getDouble(ConfigHelper.WorldSettingKey.SPEED_CURVE),
+						ws.getDouble(ConfigHelper.WorldSettingKey.MIN_NIGHT_MULT),
+						ws.getDouble(ConfigHelper.WorldSettingKey.MAX_NIGHT_MULT),
+						ws.getDouble(ConfigHelper.WorldSettingKey.ALL_ASLEEP_NIGHT_MULT), sleepers, wakers));
+		return true;
+	}
+
+	/**
+	 * @param instantDay The World's 'instant-day' setting
+	 * @param wakers Players awake and not ignored
+	 * @return True if the World skips straight to morning
+	 */
+	public static boolean isInstant(boolean instantDay, int wakers) { return wakers <= 0 && instantDay; }
+
+	/**
+	 * The night speed multiplier.
+	 * @param curve The night speed curve
+	 * @param minMult The multiplier with one player sleeping
+	 * @param maxMult The multiplier with all but one player sleeping
+	 * @param allAsleepMult The multiplier with everyone sleeping
+	 * @param sleepers Players sleeping
+	 * @param wakers Players awake and not ignored
+	 * @return The multiplier
+	 */
+	public static double multiplier(double curve, double minMult, double maxMult, double allAsleepMult, int sleepers, int wakers) {
+		return wakers <= 0 ? allAsleepMult : multiplier(curve, minMult, maxMult, sleepers, wakers);
+	}
+
+	/**
+	 * The night speed multiplier while some players are still awake.
+	 * @param curve The night speed curve
+	 * @param minMult The multiplier with one player sleeping
+	 * @param maxMult The multiplier with all but one player sleeping
+	 * @param sleepers Players sleeping
+	 * @param wakers Players awake and not ignored
+	 * @return The multiplier
+	 */
+	public static double multiplier(double curve, double minMult, double maxMult, int sleepers, int wakers) {
+		return MiscUtils.remapValue(true, 0.0, 1.0, minMult, maxMult, MiscUtils.calcSpeed(curve, SleepIndex.sleepRatio(sleepers, wakers)));
+	}
+
+	/**
+	 * @return True if everyone is asleep and the World skips straight to morning
+	 */
+	public boolean isInstant() { return current.instant; }
+
+	/**
+	 * @return The planned night speed multiplier. Meaningless if {@link #isInstant()}.
+	 */
+	public double getMultiplier() { return current.multiplier; }
+
+	/**
+	 * @param time The World's current time
+	 * @return The timescale to apply this tick
+	 */
+	public double getTimescale(long time) {
+		Plan plan = current;
+		return timescale(plan.instant, plan.multiplier, time);
+	}
+
+	/**
+	 * @param instant True if the World skips straight to morning
+	 * @param multiplier The night speed multiplier
+	 * @param time The World's current time
+	 * @return The timescale to apply this tick
+	 */
+	public static double timescale(boolean instant, double multiplier, long time) {
+		return instant ? SmoothSleep.SLEEP_TICKS_END - time : multiplier;
+	}
+
+	/**
+	 * Adds this tick's time on top of what passes normally to what's left over from
+	 * earlier ticks. The whole ticks of it are skipped this tick.
+	 * @param remain The part of a tick left over from earlier ticks
+	 * @param timescale The timescale applied this tick
+	 * @param baseSpeed The base time speed
+	 * @return The time to skip, in ticks, including the left over part
+	 */
+	public static double carry(double remain, double timescale, double baseSpeed) {
+		return remain + timescale * baseSpeed - baseSpeed;
+	}
+
+	/**
+	 * @param time The World's current time
+	 * @param ticks The ticks being skipped this tick
+	 * @param baseSpeed The base time speed
+	 * @return True if the night ends this tick, in which case only the ticks up to morning are skipped
+	 */
+	public static boolean reachesMorning(long time, int ticks, double baseSpeed) {
+		return time + ticks + (int) baseSpeed >= SmoothSleep.SLEEP_TICKS_END;
+	}
+
+	/**
+	 * Works out how many server ticks are left until morning if the night keeps
+	 * passing at the planned speed.
+	 * @param time The World's current time
+	 * @param baseSpeed The base time speed
+	 * @param sleeping Whether the planned speed is being applied. If not, the night passes at the base speed.
+	 * @return Ticks until morning, or -1 if it isn't night or time isn't moving
+	 */
+	public long ticksToMorning(long time, double baseSpeed, boolean sleeping) {
+		if (!WorldData.isNight(time)) return -1;
+		Plan plan = current;
+		if (sleeping && plan.instant) return 1;
+		double rate = sleeping ? plan.multiplier * baseSpeed : baseSpeed;
+		if (rate <= 0) return -1;
+		return Math.max(1L, (long) Math.ceil((SmoothSleep.SLEEP_TICKS_END - time) / rate));
+	}
+
+	private static final class Plan {
+		private final CompiledSettings plannedFor;
+		private final int sleepers, wakers;
+		private final boolean instant;
+		private final double multiplier;
+
+		private Plan(CompiledSettings plannedFor, int sleepers, int wakers, boolean instant, double multiplier) {
+			this.plannedFor = plannedFor;
+			this.sleepers = sleepers;
+			this.wakers = wakers;
+			this.instant = instant;
+			this.multiplier = multiplier;
+		}
+	}
+}
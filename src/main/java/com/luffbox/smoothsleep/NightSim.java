@@ -0,0 +1,241 @@
+package com.luffbox.smoothsleep;
+
+import com.luffbox.smoothsleep.lib.ConfigHelper;
+import com.luffbox.smoothsleep.lib.TimerStore;
+import com.luffbox.smoothsleep.lib.trace.NightTrace;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A model of a night with virtual players, to see how long it lasts with a World's
+ * settings before changing them. Players go to bed (and some get up again) at scripted
+ * times, and each server tick the night speed and time skipped are worked out with
+ * the same {@link NightPlan} math as {@link WorldData#timestep()}, with every sleeper's
+ * timers advanced in a real {@link TimerStore}.
+ * <p>
+ * It's a model, not the plugin: no events, listeners, sleep index, vitals, templates
+ * or packets are involved, so its CPU time is only that of the time math and timers,
+ * and UI updates are counted rather than rendered. It's run with /ssdebug simulate.
+ * For what a night really costs, play it through the plugin with the NightHarness
+ * in the tests, or use the profiler (/ssdebug on) on the server.
+ * <p>
+ * A night recorded by the {@link com.luffbox.smoothsleep.lib.trace.TraceRecorder} can be
+ * played through the model instead, with /ssdebug replay. Only who was asleep and awake
+ * is taken from the recording.
+ */
+public class NightSim {
+
+	/**
+	 * The World settings the night is played out with.
+	 */
+	public static final class Settings {
+		public double curve = 0.5, minMult = 10, maxMult = 20, allAsleepMult = 30, baseSpeed = 1.0;
+		public boolean instantDay = false;
+		public int uiRefresh = 1;
+
+		public static Settings of(ConfigHelper.WorldSettings ws, double baseSpeed) {
+			Settings s = new Settings();
+			s.curve = ws.getDouble(ConfigHelper.WorldSettingKey.SPEED_CURVE);
+			s.minMult = ws.getDouble(ConfigHelper.WorldSettingKey.MIN_NIGHT_MULT);
+			s.maxMult = ws.getDouble(ConfigHelper.WorldSettingKey.MAX_NIGHT_MULT);
+			s.allAsleepMult = ws.getDouble(ConfigHelper.WorldSettingKey.ALL_ASLEEP_NIGHT_MULT);
+			s.instantDay = ws.getBoolean(ConfigHelper.WorldSettingKey.INSTANT_DAY);
+			s.uiRefresh = Math.max(1, ws.getInt(ConfigHelper.WorldSettingKey.UI_REFRESH_TICKS));
+			s.baseSpeed = baseSpeed;
+			return s;
+		}
+	}
+
+	/**
+	 * Who goes to bed, and when. Times are in server ticks from the start of the night.
+	 */
+	public static final class Scenario {
+		public int players = 100;
+		public double sleepFraction = 0.5; // Of the players, how many go to bed
+		public int enterWindow = 600; // Sleepers go to bed at random within this many ticks
+		public double leaveFraction = 0.0; // Of the sleepers, how many get up again before morning
+		public long seed = 1L;
+	}
+
+	public static final class Result {
+		public long realTicks, sleepTicks, uiUpdates, cpuNanos, allocBytes;
+		public int peakSleepers;
+		public double maxTimescale, meanTimescale;
+		public boolean reachedMorning;
+		public long recordedTicks = -1, timescaleMismatches; // Only set when replaying
+
+		public List<String> describe() {
+			List<String> lines = new ArrayList<>();
+			lines.add(String.format(Locale.ENGLISH, "Modelled night length: %d ticks (%.1fs), vanilla %d ticks%s", realTicks, realTicks / 20.0,
+					SmoothSleep.SLEEP_TICKS_DURA, reachedMorning ? "" : ", stopped before morning"));
+			lines.add(String.format(Locale.ENGLISH, "Sleep ticks: %d, peak sleepers: %d, timescale mean %.2f max %.2f",
+					sleepTicks, peakSleepers, meanTimescale, maxTimescale));
+			lines.add(String.format(Locale.ENGLISH, "Model CPU (time math and timers only): %.2fms total, %.2f\u00b5s per sleep tick",
+					cpuNanos / 1_000_000.0, sleepTicks == 0 ? 0.0 : cpuNanos / 1000.0 / sleepTicks));
+			lines.add("Model allocated: " + (allocBytes < 0 ? "?" : allocBytes + " bytes") + ", UI updates due (not rendered): " + uiUpdates);
+			if (recordedTicks >= 0) {
+				lines.add("Recorded night: last sleep tick at " + recordedTicks + " ticks, timescale differed on "
+						+ timescaleMismatches + " ticks");
+			}
+			return lines;
+		}
+	}
+
+	private NightSim() {}
+
+	/**
+	 * Plays out a night from {@link SmoothSleep#SLEEP_TICKS_START} until morning, or until
+	 * twice the vanilla night length has passed.
+	 * @param s The World settings
+	 * @param sc The players and when they sleep
+	 * @return What the night took
+	 */
+	public static Result run(Settings s, Scenario sc) {
+		int limit = (int) (SmoothSleep.SLEEP_TICKS_DURA * 2);
+		int[] sleep = new int[limit + 1], wake = new int[limit + 1];
+		wake[0] = sc.players;
+		Random rnd = new Random(sc.seed);
+		int sleepers = (int) Math.round(sc.players * Math.max(0.0, Math.min(1.0, sc.sleepFraction)));
+		int window = Math.max(1, Math.min(limit, sc.enterWindow));
+		for (int i = 0; i < sleepers; i++) {
+			int enter = rnd.nextInt(window);
+			sleep[enter]++;
+			wake[enter]--;
+			if (rnd.nextDouble() < sc.leaveFraction) {
+				int leave = enter + 1 + rnd.nextInt(window);
+				if (leave < limit) {
+					sleep[leave]--;
+					wake[leave]++;
+				}
+			}
+		}
+		return play(s, SmoothSleep.SLEEP_TICKS_START, sleep, wake, sc.players, null);
+	}
+
+	/**
+	 * Plays a recorded night again through the model with the given settings. Replaying
+	 * with the settings the night was recorded with should give the same night length and
+	 * timescales, and replaying with others shows what they would have done on the same night.
+	 * @param s The World settings
+	 * @param trace The recorded night
+	 * @return What the night took, and how it compares to the recording
+	 * @throws IllegalArgumentException If the trace dropped records, as its player counts can't be trusted
+	 */
+	public static Result replay(Settings s, NightTrace trace) {
+		if (trace.getDropped() > 0) {
+			throw new IllegalArgumentException("The trace dropped " + trace.getDropped() + " records while recording");
+		}
+		int last = 0;
+		for (int i = 0; i < trace.size(); i++) { last = Math.max(last, trace.getTick(i)); }
+		int limit = Math.max(last + 1, (int) (SmoothSleep.SLEEP_TICKS_DURA * 2));
+		int[] sleep = new int[limit + 1], wake = new int[limit + 1];
+		float[] recorded = new float[limit + 1];
+		Arrays.fill(recorded, Float.NaN);
+		Map<Integer, Integer> states = new HashMap<>();
+		int recordedTicks = -1, players = 0;
+		for (int i = 0; i < trace.size(); i++) {
+			int tick = Math.max(0, trace.getTick(i));
+			if (trace.getType(i) == NightTrace.TICK) {
+				recorded[tick] = Float.intBitsToFloat(trace.getB(i));
+				recordedTicks = tick + 1;
+			} else if (trace.getType(i) == NightTrace.STATE) {
+				players = Math.max(players, trace.getA(i) + 1);
+				Integer old = trace.getB(i) == NightTrace.REMOVED ? states.remove(trace.getA(i)) : states.put(trace.getA(i), trace.getB(i));
+				count(sleep, wake, tick, old, -1);
+				count(sleep, wake, tick, trace.getB(i), 1);
+			}
+		}
+		Result r = play(s, trace.getStartTime(), sleep, wake, players, recorded);
+		r.recordedTicks = recordedTicks;
+		return r;
+	}
+
+	private static void count(int[] sleep, int[] wake, int tick, Integer state, int change) {
+		if (state == null) return;
+		if (state == SleepIndex.SleepState.SLEEPING.ordinal()) { sleep[tick] += change; }
+		else if (state == SleepIndex.SleepState.AWAKE.ordinal()) { wake[tick] += change; }
+	}
+
+	/**
+	 * @param startTime The World time the night starts at
+	 * @param sleep How many players go to bed (or get up, if negative) on each tick
+	 * @param wake How many awake players join (or leave, if negative) on each tick
+	 * @param timers How many timer slots to allocate
+	 * @param recorded The timescale recorded on each tick, NaN for ticks without a sleep tick, or null if not replaying
+	 */
+	private static Result play(Settings s, long startTime, int[] sleep, int[] wake, int timers, float[] recorded) {
+		int limit = sleep.length - 1;
+		TimerStore store = new TimerStore();
+		int[] slots = new int[Math.max(1, timers)];
+		for (int i = 0; i < timers; i++) { slots[i] = store.allocate(); }
+
+		Result r = new Result();
+		ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+		boolean cpu = mx.isCurrentThreadCpuTimeSupported();
+		long cpuStart = cpu ? mx.getCurrentThreadCpuTime() : System.nanoTime();
+		long allocStart = allocatedBytes();
+
+		long time = startTime;
+		double remain = 0, totalScale = 0;
+		int sleepers = 0, wakers = 0, uiTick = 0;
+		double mult = 0;
+		int plannedSleepers = -1, plannedWakers = -1;
+		int tick = 0;
+		for (; tick < limit && time < SmoothSleep.SLEEP_TICKS_END; tick++) {
+			sleepers += sleep[tick];
+			wakers += wake[tick];
+			if (sleepers <= 0) { // No sleep tick runs, time passes at the normal speed
+				time += (long) s.baseSpeed;
+				continue;
+			}
+			r.sleepTicks++;
+			r.peakSleepers = Math.max(r.peakSleepers, sleepers);
+			if (sleepers != plannedSleepers || wakers != plannedWakers) { // Same as NightPlan, only worked out again on a change
+				plannedSleepers = sleepers;
+				plannedWakers = wakers;
+				mult = NightPlan.multiplier(s.curve, s.minMult, s.maxMult, s.allAsleepMult, sleepers, wakers);
+			}
+			double timescale = NightPlan.timescale(NightPlan.isInstant(s.instantDay, wakers), mult, time);
+			totalScale += timescale;
+			r.maxTimescale = Math.max(r.maxTimescale, timescale);
+			if (recorded != null && !Float.isNaN(recorded[tick]) && Math.abs(recorded[tick] - (float) timescale) > 0.001f) {
+				r.timescaleMismatches++;
+			}
+
+			remain = NightPlan.carry(remain, timescale, s.baseSpeed);
+			int ticks = (int) remain;
+			if (NightPlan.reachesMorning(time, ticks, s.baseSpeed)) { ticks = (int) (SmoothSleep.SLEEP_TICKS_END - time); }
+			store.incAll(slots, Math.min(sleepers, slots.length), ticks + 1);
+			int players = sleepers + wakers;
+			uiTick = (uiTick + 1) % s.uiRefresh;
+			r.uiUpdates += players / s.uiRefresh + (uiTick < players % s.uiRefresh ? 1 : 0);
+			remain %= 1;
+			time += ticks + (long) s.baseSpeed;
+		}
+
+		r.cpuNanos = (cpu ? mx.getCurrentThreadCpuTime() : System.nanoTime()) - cpuStart;
+		long allocEnd = allocatedBytes();
+		r.allocBytes = allocStart < 0 ? -1 : allocEnd - allocStart;
+		r.realTicks = tick;
+		r.reachedMorning = time >= SmoothSleep.SLEEP_TICKS_END;
+		r.meanTimescale = r.sleepTicks == 0 ? 0 : totalScale / r.sleepTicks;
+		return r;
+	}
+
+	// Bytes allocated by this thread so far, or -1 if the JVM can't tell
+	private static long allocatedBytes() {
+		ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+		if (!(mx instanceof com.sun.management.ThreadMXBean)) return -1;
+		com.sun.management.ThreadMXBean sunMx = (com.sun.management.ThreadMXBean) mx;
+		if (!sunMx.isThreadAllocatedMemorySupported() || !sunMx.isThreadAllocatedMemoryEnabled()) return -1;
+		return sunMx.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
@@ -1,20 +1,22 @@
 package com.luffbox.smoothsleep;
 
 import com.luffbox.smoothsleep.lib.*;
-import com.luffbox.smoothsleep.tasks.WakeParticlesTask;
+import com.luffbox.smoothsleep.lib.profiler.Phase;
+import com.luffbox.smoothsleep.lib.profiler.TickProfiler;
+import com.luffbox.smoothsleep.lib.reward.CleanseReward;
+import com.luffbox.smoothsleep.lib.reward.SleepReward;
+import com.luffbox.smoothsleep.lib.template.RenderContext;
+import com.luffbox.smoothsleep.lib.template.Template;
 import org.bukkit.GameMode;
-import org.bukkit.attribute.Attribute;
-import org.bukkit.attribute.AttributeInstance;
 import org.bukkit.boss.BarColor;
 import org.bukkit.boss.BarStyle;
 import org.bukkit.boss.BossBar;
-import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
-import org.bukkit.potion.PotionEffect;
-import org.bukkit.potion.PotionEffectType;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.luffbox.smoothsleep.lib.ConfigHelper.WorldSettingKey.*;
 
@@ -26,15 +28,28 @@ public class PlayerData implements Purgeable {
 	private final SmoothSleep pl;
 	private final PlayerTimers timers;
 	private final Player plr;
-	private boolean ignorePerm = false;
-	private BossBar bar;
+	private final RenderContext renderCtx;
+	private final PermCache perms;
+	private final UIState ui = new UIState();
+	private BarState bar;
 	private boolean woke = false;
+	private volatile boolean uiUpdateRequested = false;
+	// Bumped by every UI update, so text rendered for an older one is dropped
+	private long renderSeq = 0;
+	private Map<ConfigHelper.WorldSettingKey, String> prerendered;
+	private SleepSnapshot prerenderedFor;
+
+	// Handed out round-robin so players are spread evenly over the UI refresh window
+	private static final AtomicInteger nextUISlot = new AtomicInteger();
+	private final int uiSlot = nextUISlot.getAndIncrement() & Integer.MAX_VALUE;
 
 	public PlayerData(SmoothSleep plugin, Player player) {
 		SmoothSleep.logDebug("Initializing Player data for " + player.getName());
 		pl = plugin;
 		plr = player;
-		timers = new PlayerTimers();
+		timers = new PlayerTimers(pl.data.timerStore);
+		perms = new PermCache(player);
+		renderCtx = new RenderContext(pl.data.userHelper);
 		update();
 	}
 
@@ -46,97 +61,171 @@ public class PlayerData implements Purgeable {
 	// Add anything that needs to be checked on join or world change here.
 	// Do not call on sleep tick! (Will cause perm check every tick)
 	public void update() {
-		updateIgnorePerm();
+		updatePerms();
 		updateUI();
 	}
 
-	public void updateUI() {
-		updateBossBar();
-		updateActionBar();
-		updateTitles();
+	public void updateUI() { updateUI(worldData().snapshot()); }
+	public void updateUI(SleepSnapshot snap) {
+		renderSeq++;
+		applyUI(snap);
+	}
+
+	private void applyUI(SleepSnapshot snap) {
+		long start = TickProfiler.start();
+		try {
+			updateBossBar(snap);
+			updateActionBar(snap);
+			updateTitles(snap);
+		} finally {
+			if (start != 0L) TickProfiler.stop(Phase.UPDATE_UI, plr.getWorld(), start); // Don't look the World up with the profiler off
+		}
+	}
+
+	/**
+	 * Same as {@link #updateUI(SleepSnapshot)}, except the text that depends on the player
+	 * is rendered by the {@link AsyncRenderer} and the UI is updated with it on a later
+	 * tick. The morning update, and any update with nothing to render for the player,
+	 * is done right away. Call from the thread that owns the player.
+	 * @param snap The snapshot to render for
+	 */
+	public void updateUIAsync(SleepSnapshot snap) {
+		AsyncRenderer renderer = pl.data.renderer;
+		WorldData wd = worldData();
+		if (snap.isMorning() || wd == null || !renderer.isEnabled()) { updateUI(snap); return; }
+		List<ConfigHelper.WorldSettingKey> keys = playerKeys(snap);
+		if (keys.isEmpty() || !renderer.submit(this, wd, snap, keys, ++renderSeq)) { updateUI(snap); }
+	}
+
+	/**
+	 * Updates the UI with text from the {@link AsyncRenderer}. Results for an older update
+	 * than the player's latest, or that arrive once the night is over, are dropped.
+	 */
+	void deliverUI(WorldData wd, SleepSnapshot snap, Map<ConfigHelper.WorldSettingKey, String> text, long seq) {
+		if (seq != renderSeq || pl.data.getPlayerData(plr) != this || worldData() != wd) return;
+		if (!wd.isNight() || wd.hasFinishedSleeping(plr)) return;
+		prerendered = text;
+		prerenderedFor = snap;
+		try {
+			applyUI(snap);
+		} finally {
+			prerendered = null;
+			prerenderedFor = null;
+		}
+	}
+
+	// The templates applyUI would render for this player, leaving out ones shared with the World
+	private List<ConfigHelper.WorldSettingKey> playerKeys(SleepSnapshot snap) {
+		ConfigHelper.WorldSettings conf = worldConf();
+		List<ConfigHelper.WorldSettingKey> keys = new ArrayList<>(4);
+		boolean sleeping = isSleeping();
+		if (conf.getBoolean(TITLES_ENABLED)) {
+			if (snap.isNight() && sleeping) {
+				addPlayerKey(keys, conf, SLEEP_TITLE);
+				addPlayerKey(keys, conf, SLEEP_SUBTITLE);
+			} else if (woke) {
+				addPlayerKey(keys, conf, MORNING_TITLE);
+				addPlayerKey(keys, conf, MORNING_SUBTITLE);
+			}
+		}
+		if (snap.isNight() && snap.hasSleepers()) {
+			if (conf.getBoolean(ACTIONBAR_ENABLED) && (sleeping || conf.getBoolean(ACTIONBAR_WAKERS))) {
+				addPlayerKey(keys, conf, ACTIONBAR_TITLE);
+			}
+			if (conf.getBoolean(BOSSBAR_ENABLED) && (sleeping || conf.getBoolean(BOSSBAR_WAKERS))) {
+				addPlayerKey(keys, conf, BOSSBAR_TITLE);
+			}
+		}
+		return keys;
 	}
 
-	public void clearTitles() {
-		plr.sendTitle(" ", " ", 0, 0, 0);
+	private void addPlayerKey(List<ConfigHelper.WorldSettingKey> keys, ConfigHelper.WorldSettings conf, ConfigHelper.WorldSettingKey key) {
+		if (!pl.data.placeholders.isPlayerIndependent(conf.getTemplate(key))) { keys.add(key); }
 	}
-	public void updateTitles() {
+
+	public int getUISlot() { return uiSlot; }
+
+	/**
+	 * Makes sure this player's UI is updated on the next sleep tick, even if
+	 * it's not their turn in the refresh window.
+	 */
+	public void requestUIUpdate() { uiUpdateRequested = true; }
+	public boolean takeUIUpdateRequest() {
+		boolean requested = uiUpdateRequested;
+		uiUpdateRequested = false;
+		return requested;
+	}
+
+	public void clearTitles() { ui.clearTitles(plr); }
+	public void updateTitles() { updateTitles(worldData().snapshot()); }
+	public void updateTitles(SleepSnapshot snap) {
 		if (!worldConf().getBoolean(TITLES_ENABLED)) return;
-		if (!worldData().isNight() || !isSleeping()) {
-			if (woke) plr.sendTitle(mrnTitle(), mrnSubtitle(), 0, worldConf().getInt(TITLE_STAY), worldConf().getInt(TITLE_FADE));
+		if (!snap.isNight() || !isSleeping()) {
+			if (woke) ui.sendTitle(plr, mrnTitle(snap), mrnSubtitle(snap), worldConf().getInt(TITLE_STAY), worldConf().getInt(TITLE_FADE));
 			woke = false;
 			return;
 		}
-		plr.sendTitle(slpTitle(), slpSubtitle(), 0, worldConf().getInt(TITLE_STAY), worldConf().getInt(TITLE_FADE));
+		ui.sendTitle(plr, slpTitle(snap), slpSubtitle(snap), worldConf().getInt(TITLE_STAY), worldConf().getInt(TITLE_FADE));
 	}
 
-	public void clearActionBar() { pl.data.actionBarHelper.sendActionBar(plr, " "); }
-	public void updateActionBar() {
+	public void clearActionBar() { ui.clearActionBar(pl.data.actionBarHelper, plr); }
+	public void updateActionBar() { updateActionBar(worldData().snapshot()); }
+	public void updateActionBar(SleepSnapshot snap) {
 		if (!worldConf().getBoolean(ACTIONBAR_ENABLED)) { return; }
 		if (!isSleeping() && !worldConf().getBoolean(ACTIONBAR_WAKERS)) { return; }
-		if (!worldData().isNight() || worldData().getSleepers().isEmpty()) { clearActionBar(); return; }
-		pl.data.actionBarHelper.sendActionBar(plr, actionBarTitle());
+		if (!snap.isNight() || !snap.hasSleepers()) { clearActionBar(); return; }
+		ui.sendActionBar(pl.data.actionBarHelper, plr, actionBarTitle(snap));
 	}
 
-	public void updateBossBar() {
+	public void updateBossBar() { updateBossBar(worldData().snapshot()); }
+	public void updateBossBar(SleepSnapshot snap) {
 		if (!worldConf().getBoolean(BOSSBAR_ENABLED)) { hideBossBar(); return; }
 		if (!isSleeping() && !worldConf().getBoolean(BOSSBAR_WAKERS)) { hideBossBar(); return; }
-		if (worldData().isNight() && !worldData().getSleepers().isEmpty()) {
+		if (snap.isNight() && snap.hasSleepers()) {
+			if (worldData().usesSharedBar()) {
+				releaseBossBar(); // In case the template was personalized before
+				worldData().showSharedBar(plr, snap);
+				return;
+			}
 			if (bar == null) { createBossBar(); }
-			bar.setTitle(bossBarTitle());
-			bar.setColor(worldConf().getBarColor(BOSSBAR_COLOR));
-			bar.setStyle(worldConf().getBarStyle(BOSSBAR_STYLE));
-			bar.setProgress(worldData().getTimeRatio());
+			bar.update(bossBarTitle(snap), worldConf().getBarColor(BOSSBAR_COLOR), worldConf().getBarStyle(BOSSBAR_STYLE),
+					snap.getTimeRatio(), worldConf().getInt(BOSSBAR_PROGRESS_STEPS));
 			showBossBar();
 		} else { hideBossBar(); }
 	}
 
 	public void createBossBar() {
 		if (bar == null) {
-			bar = pl.getServer().createBossBar("", BarColor.BLUE, BarStyle.SOLID); // For less repetition, create then update
-			bar.addPlayer(plr);
+			BossBar bb = pl.getServer().createBossBar("", BarColor.BLUE, BarStyle.SOLID); // For less repetition, create then update
+			bb.addPlayer(plr);
+			bar = new BarState(bb);
 		}
 	}
 
-	public void showBossBar() { if (bar != null) bar.setVisible(true); }
-	public void hideBossBar() { if (bar != null) bar.setVisible(false); }
-
-	// Health and food is clamped to prevent IllegalArgumentException
-	public void tickTimers(double ticks) {
-		timers.incAll(ticks);
-
-		int maxFeed = 20;
-		if (isSleeping() || worldConf().getBoolean(FEED_AWAKE)) {
-			if (!plr.hasPermission("smoothsleep.ignorefeed")) {
-				while (timers.getFood() >= worldConf().getInt(FEED_TICKS)) {
-					timers.decFood(worldConf().getInt(FEED_TICKS));
-					int val = plr.getFoodLevel() + worldConf().getInt(FEED_AMOUNT);
-					boolean addSat = worldConf().getBoolean(ADD_SATURATION) && val >= maxFeed;
-					val = MiscUtils.clamp(val, 0, maxFeed);
-					plr.setFoodLevel(val);
-					if (addSat && plr.getSaturation() < worldConf().getDouble(MAX_SATURATION)) {
-						// Add saturation, clamp to food level, as per https://minecraft.gamepedia.com/Hunger#Mechanics
-						double sat = plr.getSaturation() + worldConf().getDouble(SATURATION_AMOUNT);
-						sat = MiscUtils.clamp(sat, 0.0, worldConf().getDouble(MAX_SATURATION));
-						plr.setSaturation((float) sat);
-					}
-				}
-			}
-		}
+	public void showBossBar() { if (bar != null) bar.show(); }
+	public void hideBossBar() {
+		if (bar != null) bar.hide();
+		WorldData wd = worldData();
+		if (wd != null) wd.hideSharedBar(plr);
+	}
 
-		if (isSleeping() || worldConf().getBoolean(HEAL_AWAKE)) {
-			if (!plr.hasPermission("smoothsleep.ignoreheal")) {
-				AttributeInstance mli = plr.getAttribute(Attribute.GENERIC_MAX_HEALTH);
-				double maxLife = mli == null ? 20 : mli.getValue();
-				while (timers.getHeal() >= worldConf().getInt(HEAL_TICKS)) {
-					timers.decHeal(worldConf().getInt(HEAL_TICKS));
-					double val = plr.getHealth() + worldConf().getInt(HEAL_AMOUNT);
-					val = MiscUtils.clamp(val, 0, maxLife);
-					plr.setHealth(val);
-				}
-			}
+	// Drops this player's own boss bar, it'll be created again if it's needed
+	public void releaseBossBar() {
+		if (bar != null) {
+			bar.getBar().removeAll();
+			bar = null;
 		}
 	}
 
+	// Health and food is clamped to prevent IllegalArgumentException
+	/**
+	 * Advances this player's timers and feeds or heals them for every interval that
+	 * passed. The sleep tick batches this for all sleepers through the World's
+	 * {@link VitalsEngine} instead.
+	 * @param ticks The ticks that passed
+	 */
+	public void tickTimers(double ticks) { worldData().getVitals().tick(this, ticks); }
+
 	public Player getPlayer() { return plr; }
 
 	public boolean isSleeping() { return plr.isSleeping(); }
@@ -152,99 +241,126 @@ public class PlayerData implements Purgeable {
 	}
 
 	// Checks SmoothSleep's ignore permission
-	private boolean hasIgnorePerm() { return ignorePerm; }
+	private boolean hasIgnorePerm() { return perms.has(PermCache.Perm.IGNORE); }
 
-	// Only check this when player joins or changes world to minimize perm checks.
-	public void updateIgnorePerm() { ignorePerm = plr.hasPermission(SmoothSleep.PERM_IGNORE); }
+	public PermCache getPerms() { return perms; }
 
-	public void wake() {
-		boolean complete = worldData().hasFinishedSleeping(getPlayer());
-		if (complete) {
-			woke = true;
+	// Only check this when player joins, changes world or night starts to minimize perm checks.
+	public void updatePerms() {
+		boolean ignored = hasIgnorePerm();
+		perms.refresh();
+		// Gaining or losing the ignore perm moves the player in or out of the sleep counts
+		if (ignored != hasIgnorePerm() && pl.data.getPlayerData(plr) == this) {
+			WorldData wd = worldData();
+			if (wd != null) wd.getSleepIndex().update(plr);
+		}
+	}
 
-			// Run wake particle task
-			WakeParticlesTask wpt = new WakeParticlesTask(pl, this);
-			wpt.runTaskTimer(pl, 5, worldConf().getInt(PARTICLE_DELAY));
+	/**
+	 * @deprecated All permissions are cached together now, use {@link #updatePerms()}
+	 */
+	@Deprecated
+	public void updateIgnorePerm() { updatePerms(); }
 
-			// Play wake sound
-			if (worldConf().getSound(MORNING_SOUND) != null) {
-				getPlayer().playSound(getPlayer().getLocation(), worldConf().getSound(MORNING_SOUND), 1.0f, 1.0f);
-			}
+	/**
+	 * Sends the morning title if the player slept through the night. Called as they
+	 * leave bed, so the title isn't held up by the {@link WakeQueue}.
+	 */
+	public void greet() {
+		WorldData wd = worldData();
+		if (wd == null || !wd.hasFinishedSleeping(plr)) return;
+		woke = true;
+		updateTitles();
+	}
 
-			// Apply sleep reward effects
-			if (worldConf().getBoolean(REWARD_EFFECT_ENABLED) && getPlayer().hasPermission("smoothsleep.sleepreward")) {
-				ConfigurationSection potFx = worldConf().getConfSection(REWARD_EFFECT_LIST);
-				if (!potFx.getKeys(false).isEmpty()) {
-					if ((int) timers.getSlpt() / 1000L >= worldConf().getInt(REWARD_EFFECT_SLEEP_HOURS)) {
-						Set<PotionEffect> effects = new HashSet<>();
-						boolean particles = worldConf().getBoolean(REWARD_EFFECT_PARTICLES);
-						for (String key : potFx.getKeys(false)) {
-							PotionEffectType pet = ConfigHelper.getPotionEffect(key);
-							if (pet != null && potFx.getInt(key + ".duration") > 0L) {
-								effects.add(new PotionEffect(pet,
-										potFx.getInt(key + ".duration"),
-										potFx.getInt(key + ".amplifier"),
-										true, particles, true
-								));
-							}
-						}
-						for (PotionEffect pe : effects) {
-							PotionEffect curFx = getPlayer().getPotionEffect(pe.getType());
-							if (curFx == null || curFx.getAmplifier() < pe.getAmplifier() || curFx.getDuration() < pe.getDuration()) {
-								getPlayer().addPotionEffect(pe);
-							}
+	public void wake() { wake(true); }
+
+	/**
+	 * @param effects False to skip the particles, for when the plugin is being disabled
+	 */
+	void wake(boolean effects) {
+		long start = TickProfiler.start();
+		try {
+			boolean complete = worldData().hasFinishedSleeping(getPlayer());
+			boolean rewarded = false;
+			if (complete) {
+				// Queue wake particles
+				if (effects) pl.data.particles.emit(plr, worldConf());
+
+				// Play wake sound
+				if (worldConf().getSound(MORNING_SOUND) != null) {
+					getPlayer().playSound(getPlayer().getLocation(), worldConf().getSound(MORNING_SOUND), 1.0f, 1.0f);
+				}
+
+				// Queue sleep rewards
+				if (perms.has(PermCache.Perm.SLEEP_REWARD)) {
+					int hoursSlept = (int) timers.getSlpt() / 1000;
+					for (SleepReward reward : worldConf().getRewards()) {
+						if (hoursSlept >= reward.getRequiredHours()) {
+							pl.data.rewards.add(plr, reward);
+							rewarded = true;
 						}
 					}
 				}
-			}
-			updateUI();
-		} else {
-			clearTitles();
-			getTimers().resetAll();
-			if (worldData().getSleepers().isEmpty()) {
-				for (PlayerData pd : worldData().getPlayerData()) {
-					pd.clearActionBar();
-					pd.hideBossBar();
-				}
+				updateUI();
 			} else {
-				if (!worldConf().getBoolean(ConfigHelper.WorldSettingKey.ACTIONBAR_WAKERS)) clearActionBar();
-				if (!worldConf().getBoolean(ConfigHelper.WorldSettingKey.BOSSBAR_WAKERS)) hideBossBar();
-			}
-		}
-		if (worldConf().getBoolean(HEAL_NEG_STATUS)) {
-			if ((int) timers.getSlpt() / 1000L >= worldConf().getInt(HOURS_NEG_STATUS)) {
-				ConfigHelper.negativeEffects.forEach(plr::removePotionEffect);
+				clearTitles();
+				getTimers().resetAll();
+				if (!worldData().hasSleepers()) {
+					for (PlayerData pd : worldData().getPlayerData()) {
+						pd.clearActionBar();
+						pd.hideBossBar();
+					}
+				} else {
+					if (!worldConf().getBoolean(ConfigHelper.WorldSettingKey.ACTIONBAR_WAKERS)) clearActionBar();
+					if (!worldConf().getBoolean(ConfigHelper.WorldSettingKey.BOSSBAR_WAKERS)) hideBossBar();
+				}
 			}
-		}
-		if (worldConf().getBoolean(HEAL_POS_STATUS)) {
-			if ((int) timers.getSlpt() / 1000L >= worldConf().getInt(HOURS_POS_STATUS)) {
-				ConfigHelper.positiveEffects.forEach(plr::removePotionEffect);
+			boolean negative = worldConf().getBoolean(HEAL_NEG_STATUS)
+					&& (int) timers.getSlpt() / 1000L >= worldConf().getInt(HOURS_NEG_STATUS);
+			boolean positive = worldConf().getBoolean(HEAL_POS_STATUS)
+					&& (int) timers.getSlpt() / 1000L >= worldConf().getInt(HOURS_POS_STATUS);
+			if (negative || positive) {
+				// Cleansing has always come after the reward effects, so it can take away positive ones
+				CleanseReward cleanse = new CleanseReward(negative, positive);
+				if (rewarded) { pl.data.rewards.add(plr, cleanse); }
+				else { cleanse.grant(plr); }
 			}
+			timers.resetAll();
+			setSleepTicks(100);
+		} finally {
+			if (start != 0L) TickProfiler.stop(Phase.WAKE, plr.getWorld(), start); // Don't look the World up with the profiler off
 		}
-		timers.resetAll();
-		setSleepTicks(100);
 	}
 
 	@Override
 	public void purgeData() {
-		if (bar != null) {
-			bar.removeAll();
-			bar = null;
-		}
+		releaseBossBar();
+		timers.release();
+		WorldData wd = worldData();
+		if (wd != null) wd.hideSharedBar(plr);
 	}
 
-	private String subStr(String template) {
-		return pl.data.placeholders.replace(template, plr.getWorld(), plr, worldData().getSleepers().size(), worldData().getWakers().size(),
-				worldData().getTimescale(), (int) getTimers().getSlpt(), pl.data.userHelper.getNickname(plr));
+	private String render(ConfigHelper.WorldSettingKey key, SleepSnapshot snap) {
+		if (prerenderedFor == snap) { // Rendered ahead of time by the AsyncRenderer
+			String text = prerendered.get(key);
+			if (text != null) return text;
+		}
+		Template template = worldConf().getTemplate(key);
+		// Templates that don't read from the player are rendered once per world and shared
+		if (pl.data.placeholders.isPlayerIndependent(template)) { return worldData().renderShared(key, snap, plr); }
+		renderCtx.set(plr.getWorld(), plr, snap.getSleepers(), snap.getWakers(), snap.getTimescale(),
+				(int) getTimers().getSlpt(), snap.getTime(), snap.getTicksToMorning());
+		return pl.data.placeholders.replace(template, renderCtx);
 	}
 
 	// Some short-hand methods to assist with placeholder variables
-	private String slpTitle() { return MiscUtils.trans(subStr(worldConf().getString(SLEEP_TITLE))); }
-	private String slpSubtitle() { return MiscUtils.trans(subStr(worldConf().getString(SLEEP_SUBTITLE))); }
-	private String mrnTitle() { return MiscUtils.trans(subStr(worldConf().getString(MORNING_TITLE))); }
-	private String mrnSubtitle() { return MiscUtils.trans(subStr(worldConf().getString(MORNING_SUBTITLE))); }
-	private String actionBarTitle() { return MiscUtils.trans(subStr(worldConf().getString(ACTIONBAR_TITLE))); }
-	private String bossBarTitle() { return MiscUtils.trans(subStr(worldConf().getString(BOSSBAR_TITLE))); }
+	private String slpTitle(SleepSnapshot snap) { return render(SLEEP_TITLE, snap); }
+	private String slpSubtitle(SleepSnapshot snap) { return render(SLEEP_SUBTITLE, snap); }
+	private String mrnTitle(SleepSnapshot snap) { return render(MORNING_TITLE, snap); }
+	private String mrnSubtitle(SleepSnapshot snap) { return render(MORNING_SUBTITLE, snap); }
+	private String actionBarTitle(SleepSnapshot snap) { return render(ACTIONBAR_TITLE, snap); }
+	private String bossBarTitle(SleepSnapshot snap) { return render(BOSSBAR_TITLE, snap); }
 
 	public void setSleepTicks(long ticks) {
 //		try {
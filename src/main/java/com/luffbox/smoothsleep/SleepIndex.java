@@ -0,0 +1,118 @@
+package com.luffbox.smoothsleep;
+
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of which players in a World are sleeping, awake or being ignored
+ * so the counts can be read without walking the World's player list every time.
+ * It's kept current by the player listeners and reconciled against the World
+ * every so often in case an event was missed (AFK plugins and the like).
+ * <p>
+ * On Folia players are updated from their own region's threads while the sleep
+ * tick reads the counts on the global thread, so changes are synchronized and
+ * the sets can be read from any thread.
+ */
+public class SleepIndex {
+
+	public enum SleepState { SLEEPING, AWAKE, IGNORED }
+
+	private final SmoothSleep pl;
+	private final World w;
+	private final Map<Player, SleepState> states = new ConcurrentHashMap<>();
+	private final Set<Player> sleepers = ConcurrentHashMap.newKeySet();
+	private final Set<Player> wakers = ConcurrentHashMap.newKeySet();
+
+	public SleepIndex(SmoothSleep plugin, World world) {
+		pl = plugin;
+		w = world;
+	}
+
+	/**
+	 * Re-checks the player's state using {@link Player#isSleeping()}
+	 * @param plr The player to update
+	 */
+	public void update(Player plr) { update(plr, plr.isSleeping()); }
+
+	/**
+	 * Re-checks the player's state. Bed events fire before the player's sleeping
+	 * flag changes, so they pass the state the player is about to be in.
+	 * @param plr The player to update
+	 * @param sleeping Whether the player should be counted as sleeping
+	 */
+	public synchronized void update(Player plr, boolean sleeping) {
+		if (plr == null) return;
+		if (!plr.isOnline() || plr.hasMetadata("NPC") || !w.equals(plr.getWorld())) { remove(plr); return; }
+		SleepState state;
+		if (sleeping) {
+			state = SleepState.SLEEPING;
+		} else {
+			PlayerData pd = pl.data.getPlayerData(plr);
+			state = pd != null && pd.isSleepingIgnored() ? SleepState.IGNORED : SleepState.AWAKE;
+		}
+		SleepState old = states.put(plr, state);
+		if (old == state) return;
+		pl.data.traces.state(w, plr, state);
+		untrack(plr, old);
+		if (state == SleepState.SLEEPING) { sleepers.add(plr); }
+		else if (state == SleepState.AWAKE) { wakers.add(plr); }
+	}
+
+	public synchronized void remove(Player plr) {
+		SleepState old = states.remove(plr);
+		if (old == null) return;
+		pl.data.traces.state(w, plr, null);
+		untrack(plr, old);
+	}
+
+	private void untrack(Player plr, SleepState state) {
+		if (state == SleepState.SLEEPING) { sleepers.remove(plr); }
+		else if (state == SleepState.AWAKE) { wakers.remove(plr); }
+	}
+
+	/**
+	 * Compares the index against the World's actual player list, dropping
+	 * anyone who left and re-checking everyone else. Each player is re-checked
+	 * on the thread that owns them.
+	 */
+	public void reconcile() {
+		Set<Player> present = new HashSet<>(w.getPlayers());
+		for (Player plr : states.keySet()) {
+			if (!present.contains(plr)) remove(plr);
+		}
+		for (Player plr : present) pl.scheduler.runFor(plr, () -> update(plr));
+	}
+
+	public synchronized void clear() {
+		states.clear();
+		sleepers.clear();
+		wakers.clear();
+	}
+
+	public SleepState getState(Player plr) { return states.get(plr); }
+
+	public Set<Player> getPlayers() { return Collections.unmodifiableSet(states.keySet()); }
+	public Set<Player> getSleepers() { return Collections.unmodifiableSet(sleepers); }
+	public Set<Player> getWakers() { return Collections.unmodifiableSet(wakers); }
+
+	public int getPlayerCount() { return states.size(); }
+	public int getSleeperCount() { return sleepers.size(); }
+	public int getWakerCount() { return wakers.size(); }
+	public int getEligibleCount() { return sleepers.size() + wakers.size(); }
+
+	public double getSleepRatio() { return sleepRatio(getSleeperCount(), getWakerCount()); }
+
+	public static double sleepRatio(int sleeperCount, int wakerCount) {
+		double s = sleeperCount; // Sleepers count
+		double a = sleeperCount + wakerCount; // Wakers + Sleepers count
+		if (a <= 1 && s >= 1) return 1.0; // Only player is sleeping
+		if (a <= 1 || s <= 1) return 0.0; // No one sleeping or online
+		return (s - 1) / (a - 1); // -1 on both = first player sleeping causes min night mult
+	}
+}
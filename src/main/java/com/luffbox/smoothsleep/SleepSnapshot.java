@@ -0,0 +1,47 @@
+package com.luffbox.smoothsleep;
+
+/**
+ * An immutable view of a World's sleep state at a single tick. The sleep tick
+ * builds one of these per World each tick and passes it to every PlayerData,
+ * so the World is only queried once per tick instead of once per player.
+ * @see WorldData#snapshot(boolean)
+ */
+public final class SleepSnapshot {
+
+	private final long time, ticksToMorning;
+	private final boolean night, morning;
+	private final double timeRatio, timescale;
+	private final int sleepers, wakers;
+
+	public SleepSnapshot(long time, boolean night, double timeRatio, int sleepers, int wakers, double timescale,
+			long ticksToMorning, boolean morning) {
+		this.time = time;
+		this.night = night;
+		this.timeRatio = timeRatio;
+		this.sleepers = sleepers;
+		this.wakers = wakers;
+		this.timescale = timescale;
+		this.ticksToMorning = ticksToMorning;
+		this.morning = morning;
+	}
+
+	public long getTime() { return time; }
+	public boolean isNight() { return night; }
+	public double getTimeRatio() { return timeRatio; }
+	public int getSleepers() { return sleepers; }
+	public int getWakers() { return wakers; }
+	public int getTotal() { return sleepers + wakers; }
+	public boolean hasSleepers() { return sleepers > 0; }
+	public double getTimescale() { return timescale; }
+
+	/**
+	 * @return Server ticks until morning at this tick's night speed, or -1 if it isn't night
+	 * @see WorldData#getTicksToMorning()
+	 */
+	public long getTicksToMorning() { return ticksToMorning; }
+
+	/**
+	 * @return True if this tick is the one that steps the World to morning
+	 */
+	public boolean isMorning() { return morning; }
+}
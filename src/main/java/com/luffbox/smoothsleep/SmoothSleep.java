@@ -4,11 +4,12 @@ import com.luffbox.smoothsleep.commands.*;
 import com.luffbox.smoothsleep.lib.ConfigHelper;
 import com.luffbox.smoothsleep.lib.LoggablePlugin;
 import com.luffbox.smoothsleep.lib.TabExecutor;
+import com.luffbox.smoothsleep.lib.scheduler.TaskScheduler;
 import com.luffbox.smoothsleep.listeners.NightListeners;
 import com.luffbox.smoothsleep.listeners.PlayerListeners;
-import com.luffbox.smoothsleep.tasks.EveryTickTask;
+import org.bukkit.World;
 import org.bukkit.command.PluginCommand;
-import org.bukkit.scheduler.BukkitTask;
+import org.bukkit.entity.Player;
 
 public final class SmoothSleep extends LoggablePlugin {
 
@@ -16,6 +17,9 @@ public final class SmoothSleep extends LoggablePlugin {
 
 	public static final String PERM_IGNORE = "smoothsleep.ignore";
 	public static final String PERM_NOTIFY = "smoothsleep.notify";
+	public static final String PERM_IGNORE_FEED = "smoothsleep.ignorefeed";
+	public static final String PERM_IGNORE_HEAL = "smoothsleep.ignoreheal";
+	public static final String PERM_SLEEP_REWARD = "smoothsleep.sleepreward";
 
 	public static final long SLEEP_TICKS_START = 12541L,
 			SLEEP_TICKS_END = 23460L,
@@ -25,11 +29,11 @@ public final class SmoothSleep extends LoggablePlugin {
 			TICKS_PER_MIN = 1200L;
 
 	public DataStore data;
-
-	private BukkitTask everyTickTask;
+	public final TaskScheduler scheduler = TaskScheduler.create(this);
 
 	@Override
 	public void onEnable() {
+		if (scheduler.isRegionized()) { logDebug("Detected Folia, scheduling on the region and entity schedulers"); }
 		data = new DataStore(this); // init() after assign so data variable isn't null
 		data.init();
 
@@ -44,8 +48,7 @@ public final class SmoothSleep extends LoggablePlugin {
 		registerCmd("smoothsleeptoggle", new ToggleEnabled(this));
 		registerCmd("smoothsleepaddworld", new AddWorld(this));
 		registerCmd("smoothsleepconfigureworld", new ConfigureWorld(this));
-
-		everyTickTask = new EveryTickTask(this).runTaskTimer(this, 0L, 0L);
+		registerCmd("smoothsleepdebug", new Debug(this));
 
 		ConfigHelper.firstRun = false;
 		data.reload();
@@ -53,7 +56,6 @@ public final class SmoothSleep extends LoggablePlugin {
 
 	@Override
 	public void onDisable() {
-		if (everyTickTask != null) everyTickTask.cancel();
 		data.purgeData();
 	}
 
@@ -81,8 +83,41 @@ public final class SmoothSleep extends LoggablePlugin {
 			return false;
 		} else {
 			data.baseTimeSpeed = speed;
+			data.scheduleBoundaryChecks(); // Night start and end estimates depend on the base speed
 			return true;
 		}
 	}
 
+	/**
+	 * SmoothSleep caches player permissions and only checks them on join, world change and
+	 * at the start of the night. Plugins that change permissions at other times can call
+	 * this to make SmoothSleep check the player's permissions again.
+	 * @param plr The player whose permissions changed
+	 */
+	public void invalidatePermissions(Player plr) {
+		if (data == null) return;
+		PlayerData pd = data.getPlayerData(plr);
+		if (pd != null) pd.updatePerms();
+	}
+
+	/**
+	 * Makes SmoothSleep check the permissions of every player again.
+	 * @see #invalidatePermissions(Player)
+	 */
+	public void invalidatePermissions() {
+		if (data != null) data.updatePerms();
+	}
+
+	/**
+	 * Works out how long until morning in a World at its current night speed. This is
+	 * calculated from the time left and the speed, so it's cheap enough to call often.
+	 * @param w The World
+	 * @return Server ticks until morning, or -1 if it isn't night or SmoothSleep isn't enabled in the World
+	 */
+	public long getTicksToMorning(World w) {
+		if (data == null) return -1;
+		WorldData wd = data.getWorldData(w);
+		return wd == null ? -1 : wd.getTicksToMorning();
+	}
+
 }
@@ -0,0 +1,158 @@
+package com.luffbox.smoothsleep;
+
+import com.luffbox.smoothsleep.lib.ConfigHelper;
+import com.luffbox.smoothsleep.lib.MiscUtils;
+import com.luffbox.smoothsleep.lib.PermCache;
+import com.luffbox.smoothsleep.lib.PlayerTimers;
+import com.luffbox.smoothsleep.lib.TimerStore;
+import com.luffbox.smoothsleep.lib.profiler.Phase;
+import com.luffbox.smoothsleep.lib.profiler.TickProfiler;
+import org.bukkit.attribute.Attribute;
+import org.bukkit.attribute.AttributeInstance;
+import org.bukkit.entity.Player;
+
+import java.util.Arrays;
+
+import static com.luffbox.smoothsleep.lib.ConfigHelper.WorldSettingKey.*;
+
+/**
+ * Feeds and heals the sleepers in a World. Players are added to a batch during
+ * the sleep tick, then {@link #tick(double)} advances all of their timers at once
+ * and works out how many feed and heal intervals have passed, so each player gets
+ * a single food, saturation and health update no matter how fast the night is.
+ * <p>
+ * On Folia players can't share a batch, as each is ticked on their own thread,
+ * so they're fed and healed one at a time with {@link #tick(PlayerData, double)}.
+ */
+public class VitalsEngine {
+
+	private static final int MAX_FOOD = 20;
+
+	private final ConfigHelper.WorldSettings ws;
+	private final TimerStore store;
+	private PlayerData[] batch = new PlayerData[8];
+	private int[] slots = new int[8];
+	private int count = 0;
+
+	public VitalsEngine(ConfigHelper.WorldSettings settings, TimerStore timerStore) {
+		ws = settings;
+		store = timerStore;
+	}
+
+	/**
+	 * Adds a player to this tick's batch.
+	 * @param pd The player to feed and heal
+	 */
+	public void add(PlayerData pd) {
+		if (count == batch.length) {
+			batch = Arrays.copyOf(batch, count * 2);
+			slots = Arrays.copyOf(slots, count * 2);
+		}
+		batch[count] = pd;
+		slots[count++] = pd.getTimers().getSlot();
+	}
+
+	/**
+	 * Advances the timers of every player in the batch, feeds and heals them, then
+	 * empties the batch.
+	 * @param ticks The ticks that passed for these players
+	 */
+	public void tick(double ticks) {
+		if (count == 0) return;
+		long start = TickProfiler.start();
+		store.incAll(slots, count, ticks);
+		Rates r = new Rates(ws);
+		for (int i = 0; i < count; i++) {
+			apply(batch[i], r);
+			batch[i] = null;
+		}
+		count = 0;
+		TickProfiler.stop(Phase.VITALS, ws.getWorld(), start);
+	}
+
+	/**
+	 * Advances a single player's timers and feeds and heals them, without touching
+	 * the batch. Safe to call from any thread that owns the player.
+	 * @param pd The player to feed and heal
+	 * @param ticks The ticks that passed for the player
+	 */
+	public void tick(PlayerData pd, double ticks) {
+		long start = TickProfiler.start();
+		pd.getTimers().incAll(ticks);
+		apply(pd, new Rates(ws));
+		TickProfiler.stop(Phase.VITALS, ws.getWorld(), start);
+	}
+
+	private void apply(PlayerData pd, Rates r) {
+		Player plr = pd.getPlayer();
+		PlayerTimers timers = pd.getTimers();
+		boolean sleeping = pd.isSleeping();
+
+		if ((sleeping || r.feedAwake) && !pd.getPerms().has(PermCache.Perm.IGNORE_FEED)) {
+			int n = intervals(timers.getFood(), r.feedTicks);
+			if (n > 0) {
+				timers.decFood((double) n * r.feedTicks);
+				int food = plr.getFoodLevel();
+				int val = (int) MiscUtils.clamp(food + (long) n * r.feedAmount, 0L, MAX_FOOD);
+				if (val != food) plr.setFoodLevel(val);
+				int satSteps = r.addSaturation ? saturationSteps(food, r.feedAmount, n) : 0;
+				if (satSteps > 0 && plr.getSaturation() < r.maxSaturation) {
+					// Add saturation, clamp to food level, as per https://minecraft.gamepedia.com/Hunger#Mechanics
+					double sat = plr.getSaturation() + satSteps * r.saturationAmount;
+					plr.setSaturation((float) MiscUtils.clamp(sat, 0.0, r.maxSaturation));
+				}
+			}
+		}
+
+		if ((sleeping || r.healAwake) && !pd.getPerms().has(PermCache.Perm.IGNORE_HEAL)) {
+			int n = intervals(timers.getHeal(), r.healTicks);
+			if (n > 0) {
+				timers.decHeal((double) n * r.healTicks);
+				AttributeInstance mli = plr.getAttribute(Attribute.GENERIC_MAX_HEALTH);
+				double maxLife = mli == null ? 20 : mli.getValue();
+				double health = plr.getHealth();
+				double val = MiscUtils.clamp(health + (double) n * r.healAmount, 0, maxLife);
+				if (val != health) plr.setHealth(val);
+			}
+		}
+	}
+
+	/**
+	 * @return How many whole intervals fit in the timer, or 0 if the interval isn't positive
+	 */
+	static int intervals(double timer, int interval) {
+		if (interval <= 0 || timer < interval) return 0;
+		return (int) Math.min(Integer.MAX_VALUE, Math.floor(timer / interval));
+	}
+
+	/**
+	 * Saturation is only added by a feed that would take the player to full food or
+	 * past it. Works out how many of the {@code n} feeds do that.
+	 */
+	static int saturationSteps(int food, int amount, int n) {
+		if (amount > 0) {
+			int first = (int) Math.max(1L, (long) Math.ceil((MAX_FOOD - food) / (double) amount));
+			return Math.max(0, n - first + 1);
+		}
+		return amount == 0 && food >= MAX_FOOD ? n : 0;
+	}
+
+	// Settings are read once per tick instead of once per player per interval
+	private static class Rates {
+		private final int feedTicks, feedAmount, healTicks, healAmount;
+		private final boolean feedAwake, healAwake, addSaturation;
+		private final double saturationAmount, maxSaturation;
+
+		private Rates(ConfigHelper.WorldSettings ws) {
+			feedTicks = ws.getInt(FEED_TICKS);
+			feedAmount = ws.getInt(FEED_AMOUNT);
+			feedAwake = ws.getBoolean(FEED_AWAKE);
+			addSaturation = ws.getBoolean(ADD_SATURATION);
+			saturationAmount = ws.getDouble(SATURATION_AMOUNT);
+			maxSaturation = ws.getDouble(MAX_SATURATION);
+			healTicks = ws.getInt(HEAL_TICKS);
+			healAmount = ws.getInt(HEAL_AMOUNT);
+			healAwake = ws.getBoolean(HEAL_AWAKE);
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package com.luffbox.smoothsleep;
+
+import com.luffbox.smoothsleep.lib.ConfigHelper;
+import com.luffbox.smoothsleep.lib.Purgeable;
+import com.luffbox.smoothsleep.lib.scheduler.TaskHandle;
+import com.luffbox.smoothsleep.tasks.WakeTask;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Spreads the work of waking players up (particles, sounds, rewards and
+ * clearing effects) over the ticks after they leave bed. When everyone wakes
+ * at once in the morning, each tick handles 'wake-queue.per-tick' players, or
+ * more if needed to get through everyone within 'wake-queue.max-ticks'.
+ * The morning title isn't held up by this, it's sent as the player leaves bed
+ * (see {@link PlayerData#greet()}).
+ * <p>
+ * The queue is drained on the global thread. On Folia players leave bed on their
+ * own region's thread, so the queue is synchronized, and each player is woken
+ * on the thread that owns them.
+ */
+public class WakeQueue implements Purgeable {
+
+	private final SmoothSleep pl;
+	private final Deque<PlayerData> queue = new ArrayDeque<>();
+	private final Map<PlayerData, WorldData> worlds = new HashMap<>(); // The World each player left bed in
+	private TaskHandle task;
+
+	public WakeQueue(SmoothSleep plugin) { pl = plugin; }
+
+	/**
+	 * Queues a player who just left bed. The first players are woken on the next
+	 * tick, same as before there was a queue.
+	 * @param pd The player's data
+	 * @param wd The World they were sleeping in
+	 */
+	public synchronized void add(PlayerData pd, WorldData wd) {
+		if (worlds.put(pd, wd) == null) { queue.add(pd); }
+		if (task == null) { task = new WakeTask(this).runTimer(pl.scheduler, 0L, 1L); }
+	}
+
+	/**
+	 * Wakes a queued player right away, for when something is about to change that
+	 * the wake depends on, like the player getting back into bed.
+	 * @param pd The player's data
+	 */
+	public synchronized void wakeNow(PlayerData pd) {
+		WorldData wd = worlds.remove(pd);
+		if (wd == null) return;
+		queue.remove(pd);
+		wake(pd, wd);
+	}
+
+	public synchronized void tick() {
+		int perTick = Math.max(1, pl.data.config.getInt(ConfigHelper.GlobalSettingKey.WAKE_PER_TICK));
+		int maxTicks = Math.max(1, pl.data.config.getInt(ConfigHelper.GlobalSettingKey.WAKE_MAX_TICKS));
+		int count = Math.max(perTick, (queue.size() + maxTicks - 1) / maxTicks);
+		for (int i = 0; i < count && !queue.isEmpty(); i++) {
+			PlayerData pd = queue.poll();
+			wake(pd, worlds.remove(pd));
+		}
+		if (queue.isEmpty()) { stop(); }
+	}
+
+	private void wake(PlayerData pd, WorldData wd) {
+		// Skip players who logged out or moved to a World SmoothSleep isn't enabled in
+		pl.scheduler.runFor(pd.getPlayer(), () -> {
+			if (pl.data.getPlayerData(pd.getPlayer()) == pd && pd.worldData() != null) { pd.wake(); }
+		});
+		if (!wd.hasSleepers()) {
+			wd.stopSleepTick();
+		} else {
+			SmoothSleep.logDebug("Bed leave: Other players still sleeping");
+		}
+	}
+
+	private void stop() {
+		if (task != null) { task.cancel(); }
+		task = null;
+	}
+
+	/**
+	 * Wakes everyone still queued, so nobody misses their rewards over a reload.
+	 * The player and World data is purged right after, so players are woken right
+	 * away instead of on their own thread, without particles, and the sleep tick is
+	 * left for the World to stop.
+	 */
+	@Override
+	public synchronized void purgeData() {
+		stop();
+		Iterator<PlayerData> it = queue.iterator();
+		while (it.hasNext()) {
+			PlayerData pd = it.next();
+			it.remove();
+			worlds.remove(pd);
+			if (pl.data.getPlayerData(pd.getPlayer()) != pd || pd.worldData() == null) continue;
+			try {
+				pd.wake(false);
+			} catch (Exception e) {
+				SmoothSleep.logWarning("Failed to wake " + pd.getPlayer().getName() + ": " + e.getMessage());
+			}
+		}
+		worlds.clear();
+	}
+}
@@ -1,50 +1,80 @@
 package com.luffbox.smoothsleep;
 
+import com.luffbox.smoothsleep.lib.BarState;
 import com.luffbox.smoothsleep.lib.ConfigHelper;
 import com.luffbox.smoothsleep.lib.MiscUtils;
 import com.luffbox.smoothsleep.lib.Purgeable;
 import com.luffbox.smoothsleep.lib.TickHelper;
+import com.luffbox.smoothsleep.events.NightEndEvent;
+import com.luffbox.smoothsleep.events.NightStartEvent;
+import com.luffbox.smoothsleep.lib.profiler.Phase;
+import com.luffbox.smoothsleep.lib.profiler.TickProfiler;
+import com.luffbox.smoothsleep.lib.scheduler.TaskHandle;
+import com.luffbox.smoothsleep.lib.template.RenderContext;
+import com.luffbox.smoothsleep.tasks.NightBoundaryTask;
 import com.luffbox.smoothsleep.tasks.SleepTickTask;
 import org.bukkit.World;
+import org.bukkit.boss.BarColor;
+import org.bukkit.boss.BarStyle;
 import org.bukkit.entity.Player;
-import org.bukkit.scheduler.BukkitTask;
 
+import java.util.EnumMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Contains data about a World that SmoothSleep will use later.
+ * <p>
+ * Time stepping and the night boundary checks run on the global thread. On Folia,
+ * each player's part of the sleep tick runs on the thread that owns the player, so
+ * anything those share here is synchronized or concurrent.
  */
 public class WorldData implements Purgeable {
 
+	private static final int RECONCILE_TICKS = 100;
+	// Longest wait between boundary checks, in case time moves in a way we weren't told about
+	private static final long MAX_BOUNDARY_WAIT = 200L;
+
 	private final SmoothSleep pl;
 
 	private final World w;
 	private final ConfigHelper.WorldSettings ws;
 	private final Set<Player> finishedSleeping;
+	private final SleepIndex index;
+	private final NightPlan plan;
+	private final VitalsEngine vitals;
+	private final RenderContext sharedCtx;
+	private final Map<ConfigHelper.WorldSettingKey, String> rendered = new EnumMap<>(ConfigHelper.WorldSettingKey.class);
+	private SleepSnapshot renderedFor, sharedBarFor;
+	private BarState sharedBar;
+	private final Set<Player> sharedBarViewers = new HashSet<>();
 	private TickHelper tickHelper;
-	private BukkitTask sleepTickTask;
-	private double timescale = 0.0, timeTickRemain;
-	private int counter = 0;
+	private volatile TaskHandle sleepTickTask;
+	private TaskHandle boundaryTask;
+	private long boundaryCheckAt;
+	private Boolean night; // Null until the first boundary check
+	private volatile double timescale = 0.0; // Read by snapshots taken on player threads
+	private double timeTickRemain;
+	private int counter = 0, reconcileCounter = 0, uiTick = 0;
 
 	public WorldData(SmoothSleep plugin, World world, ConfigHelper.WorldSettings settings) {
 		pl = plugin;
 		w = world;
 		ws = settings;
-		finishedSleeping = new HashSet<>();
+		finishedSleeping = ConcurrentHashMap.newKeySet();
+		index = new SleepIndex(plugin, world);
+		plan = new NightPlan(settings);
+		vitals = new VitalsEngine(settings, plugin.data.timerStore);
+		sharedCtx = new RenderContext(plugin.data.userHelper);
 	}
 
 	public World getWorld() { return w; }
 
-	public Set<Player> getPlayers() {
-		Set<Player> players = new HashSet<>();
-		for (Player plr : w.getPlayers()) {
-			if (!plr.hasMetadata("NPC")) {
-				players.add(plr);
-			}
-		}
-		return players;
-	}
+	public SleepIndex getSleepIndex() { return index; }
+
+	public Set<Player> getPlayers() { return index.getPlayers(); }
 
 	public Set<PlayerData> getPlayerData() {
 		Set<PlayerData> pds = new HashSet<>();
@@ -55,13 +85,7 @@ public class WorldData implements Purgeable {
 		return pds;
 	}
 
-	public Set<Player> getSleepers() {
-		Set<Player> sleepers = new HashSet<>();
-		getPlayers().forEach(plr -> {
-			if (plr.isSleeping()) sleepers.add(plr);
-		});
-		return sleepers;
-	}
+	public Set<Player> getSleepers() { return index.getSleepers(); }
 
 	public Set<PlayerData> getSleeperData() {
 		Set<PlayerData> pds = new HashSet<>();
@@ -72,29 +96,14 @@ public class WorldData implements Purgeable {
 		return pds;
 	}
 
-	public boolean hasSleepers() {
-		for (Player plr : getPlayers()) { if (plr.isSleeping()) { return true; } }
-		return false;
-	}
+	public boolean hasSleepers() { return index.getSleeperCount() > 0; }
 
-	public Set<Player> getWakers() {
-		Set<Player> wakers = new HashSet<>();
-		getPlayers().forEach(plr -> {
-			if (!plr.isSleeping()) {
-				PlayerData pd = pl.data.getPlayerData(plr);
-				if (pd == null || !pd.isSleepingIgnored()) wakers.add(plr);
-			}
-		});
-		return wakers;
-	}
+	public Set<Player> getWakers() { return index.getWakers(); }
 
-	public double getSleepRatio() {
-		double s = getSleepers().size(); // Sleepers count
-		double a = getWakers().size() + s; // Wakers + Sleepers count
-		if (a <= 1 && s >= 1) return 1.0; // Only player is sleeping
-		if (a <= 1 || s <= 1) return 0.0; // No one sleeping or online
-		return (s - 1) / (a - 1); // -1 on both = first player sleeping causes min night mult
-	}
+	public int getSleeperCount() { return index.getSleeperCount(); }
+	public int getWakerCount() { return index.getWakerCount(); }
+
+	public double getSleepRatio() { return index.getSleepRatio(); }
 
 	public void resetFinishedSleeping() { finishedSleeping.clear(); }
 	public boolean hasFinishedSleeping(Player plr) { return finishedSleeping.contains(plr); }
@@ -102,10 +111,11 @@ public class WorldData implements Purgeable {
 
 	public long getTime() { return w.getTime(); }
 
-	public boolean isNight() { return getTime() >= SmoothSleep.SLEEP_TICKS_START && getTime() < SmoothSleep.SLEEP_TICKS_END; }
+	public boolean isNight() { return isNight(getTime()); }
+	public static boolean isNight(long time) { return time >= SmoothSleep.SLEEP_TICKS_START && time < SmoothSleep.SLEEP_TICKS_END; }
 
-	public double getTimeRatio() {
-		long current = getTime();
+	public double getTimeRatio() { return getTimeRatio(getTime()); }
+	public static double getTimeRatio(long current) {
 		if (current > SmoothSleep.SLEEP_TICKS_END) { return 1.0; }
 		if (current < SmoothSleep.SLEEP_TICKS_START) { return 0.0; }
 		return MiscUtils.remapValue(true, 0, SmoothSleep.SLEEP_TICKS_DURA, 0.0, 1.0, current - SmoothSleep.SLEEP_TICKS_START);
@@ -113,64 +123,239 @@ public class WorldData implements Purgeable {
 
 	public double getTimescale() { return timescale; }
 
-	private void updateTimescale() {
-		if (getWakers().size() <= 0) {
-			if (ws.getBoolean(ConfigHelper.WorldSettingKey.INSTANT_DAY)) {
-				timescale = SmoothSleep.SLEEP_TICKS_END - getTime();
+	public NightPlan getNightPlan() { return plan; }
+
+	public VitalsEngine getVitals() { return vitals; }
+
+	/**
+	 * Works out how many server ticks are left until morning at the current night speed,
+	 * without waiting for the night to play out. If nobody is sleeping the night is
+	 * expected to pass at the base time speed.
+	 * @return Ticks until morning, or -1 if it isn't night
+	 */
+	public long getTicksToMorning() { return getTicksToMorning(getTime()); }
+	private long getTicksToMorning(long time) {
+		plan.update(getSleeperCount(), getWakerCount());
+		return plan.ticksToMorning(time, pl.data.baseTimeSpeed, sleepTickRunning());
+	}
+
+	/**
+	 * Estimates how many server ticks it will take the World to reach the next night
+	 * boundary, assuming time moves at the base time speed.
+	 * @return The ticks until the next night start or end, at least 1
+	 * @see SmoothSleep#setBaseTimeSpeed(double)
+	 */
+	public long ticksToBoundary() {
+		long time = getTime();
+		long target;
+		if (time < SmoothSleep.SLEEP_TICKS_START) { target = SmoothSleep.SLEEP_TICKS_START; }
+		else if (time < SmoothSleep.SLEEP_TICKS_END) { target = SmoothSleep.SLEEP_TICKS_END; }
+		else { target = 24000L + SmoothSleep.SLEEP_TICKS_START; }
+		double speed = pl.data.baseTimeSpeed;
+		if (speed <= 0) return MAX_BOUNDARY_WAIT;
+		return Math.max(1L, (long) Math.ceil((target - time) / speed));
+	}
+
+	/**
+	 * Schedules a check of the night boundary, unless one is already scheduled sooner.
+	 * Call this whenever the World's time is changed, so the check happens right away
+	 * instead of when the previous estimate said it would.
+	 * @param delay Ticks until the check
+	 */
+	public synchronized void scheduleBoundaryCheck(long delay) {
+		if (!pl.isEnabled()) return;
+		delay = MiscUtils.clamp(delay, 1L, MAX_BOUNDARY_WAIT);
+		long now = w.getGameTime();
+		if (boundaryTask != null) {
+			if (boundaryCheckAt <= now + delay) return;
+			boundaryTask.cancel();
+		}
+		boundaryCheckAt = now + delay;
+		boundaryTask = new NightBoundaryTask(this).runLater(pl.scheduler, delay);
+	}
+
+	/**
+	 * @return True while the sleep tick is changing this World's time. The sleep tick
+	 *         schedules its own boundary check when it reaches morning.
+	 */
+	public boolean isSettingTime() { return tickHelper != null && tickHelper.isSettingTime(); }
+
+	/**
+	 * Fires a {@link NightStartEvent} or {@link NightEndEvent} if the World has crossed
+	 * a night boundary since the last check, then schedules the next check.
+	 * Only call this from the global thread.
+	 */
+	public void checkNightBoundary() {
+		long start = TickProfiler.start();
+		synchronized (this) { boundaryTask = null; }
+		boolean isNight = isNight();
+		if (night == null) {
+			night = isNight;
+		} else if (night != isNight) {
+			night = isNight;
+			if (isNight) {
+				pl.getServer().getPluginManager().callEvent(new NightStartEvent(w, this));
 			} else {
-				timescale = ws.getDouble(ConfigHelper.WorldSettingKey.ALL_ASLEEP_NIGHT_MULT);
+				pl.getServer().getPluginManager().callEvent(new NightEndEvent(w, this));
 			}
-			return;
 		}
-		double crv = getSettings().getDouble(ConfigHelper.WorldSettingKey.SPEED_CURVE);
-		double mns = ws.getDouble(ConfigHelper.WorldSettingKey.MIN_NIGHT_MULT);
-		double xns = ws.getDouble(ConfigHelper.WorldSettingKey.MAX_NIGHT_MULT);
-		timescale = MiscUtils.remapValue(true, 0.0, 1.0, mns, xns, MiscUtils.calcSpeed(crv, getSleepRatio()));
+		scheduleBoundaryCheck(ticksToBoundary());
+		TickProfiler.stop(Phase.NIGHT_BOUNDARY, w, start);
+	}
+
+	/**
+	 * Captures the current sleep state of this World. Prefer passing one snapshot
+	 * around over calling this per player, as each call queries the World.
+	 * @param morning Whether this tick is the one stepping the World to morning
+	 * @return A new immutable {@link SleepSnapshot}
+	 */
+	public SleepSnapshot snapshot(boolean morning) {
+		long time = getTime();
+		return new SleepSnapshot(time, isNight(time), getTimeRatio(time), getSleeperCount(), getWakerCount(), timescale,
+				getTicksToMorning(time), morning);
+	}
+	public SleepSnapshot snapshot() { return snapshot(false); }
+
+	/**
+	 * Renders a template that reads nothing from the player, reusing the result for
+	 * every player sharing the same snapshot. Only call this if the placeholder helper
+	 * says the template is player independent.
+	 * @param key The template's setting key
+	 * @param snap The snapshot being rendered for
+	 * @param viewer Any player in this World, only used to satisfy the render context
+	 * @return The rendered text
+	 */
+	public synchronized String renderShared(ConfigHelper.WorldSettingKey key, SleepSnapshot snap, Player viewer) {
+		if (snap != renderedFor) {
+			rendered.clear();
+			renderedFor = snap;
+		}
+		String text = rendered.get(key);
+		if (text == null) {
+			sharedCtx.set(w, viewer, snap.getSleepers(), snap.getWakers(), snap.getTimescale(), 0, snap.getTime(), snap.getTicksToMorning());
+			text = pl.data.placeholders.replace(ws.getTemplate(key), sharedCtx);
+			rendered.put(key, text);
+		}
+		return text;
+	}
+
+	// The plan only recalculates the speed when the sleepers, wakers or settings change
+	private void updateTimescale() {
+		plan.update(getSleeperCount(), getWakerCount());
+		timescale = plan.getTimescale(getTime());
 	}
 
 	public void timestep() {
-		long wtime = getTime();
-		updateTimescale();
-
-		// Feels like there's a flaw in this, but too brain-dead to work it out
-		timeTickRemain += timescale * pl.data.baseTimeSpeed - pl.data.baseTimeSpeed;
-		int ticks = (int) timeTickRemain;
-		boolean toMorning = wtime + ticks + ((int) pl.data.baseTimeSpeed) >= SmoothSleep.SLEEP_TICKS_END;
-
-		if (toMorning) {
-			ticks = (int) (SmoothSleep.SLEEP_TICKS_END - wtime);
-			if (getSettings().getBoolean(ConfigHelper.WorldSettingKey.CLEAR_WEATHER)) {
-				clearWeather();
+		long start = TickProfiler.start();
+		try {
+			// Events should keep the index current, but every now and then make sure it hasn't drifted
+			if (++reconcileCounter >= RECONCILE_TICKS) {
+				index.reconcile();
+				reconcileCounter = 0;
 			}
+			long wtime = getTime();
+			updateTimescale();
+			pl.data.traces.tick(w, wtime, timescale);
+
+			// Feels like there's a flaw in this, but too brain-dead to work it out
+			timeTickRemain = NightPlan.carry(timeTickRemain, timescale, pl.data.baseTimeSpeed);
+			int ticks = (int) timeTickRemain;
+			boolean toMorning = NightPlan.reachesMorning(wtime, ticks, pl.data.baseTimeSpeed);
+
+			if (toMorning) {
+				ticks = (int) (SmoothSleep.SLEEP_TICKS_END - wtime);
+				if (getSettings().getBoolean(ConfigHelper.WorldSettingKey.CLEAR_WEATHER)) {
+					clearWeather();
+				}
+			}
+			// One snapshot per tick, shared by every player in the world
+			timestepTimers(ticks, snapshot(toMorning));
+			tickHelper.tick(ticks);
+			timeTickRemain %= 1;
+			if (toMorning) { scheduleBoundaryCheck(1); }
+		} finally {
+			TickProfiler.stop(Phase.TIMESTEP, w, start);
 		}
-		timestepTimers(ticks, toMorning);
-		tickHelper.tick(ticks);
-		timeTickRemain %= 1;
 	}
 
-	public void timestepTimers(int timescale, boolean isMorning) {
+	public void timestepTimers(int timescale, SleepSnapshot snap) {
+		long start = TickProfiler.start();
 		final int ticks = timescale + 1;
+		final boolean isMorning = snap.isMorning();
 		boolean setSleepTicks = counter > 50;
+		// Players are spread over the refresh window so only a slice of them update their UI each tick
+		final int refresh = Math.max(1, ws.getInt(ConfigHelper.WorldSettingKey.UI_REFRESH_TICKS));
+		uiTick = (uiTick + 1) % refresh;
+		final int bucket = uiTick;
+		// On Folia players are updated on their own threads, so they can't share a batch
+		final boolean batch = !pl.scheduler.isRegionized();
 		getPlayers().forEach(plr -> {
 			PlayerData pd = pl.data.getPlayerData(plr);
-			if (pd != null) {
-				if (isMorning) { setFinishedSleeping(plr); }
-				pd.updateUI();
+			if (pd == null) return;
+			if (isMorning) { setFinishedSleeping(plr); }
+			pl.scheduler.runFor(plr, () -> {
+				if (isMorning || pd.takeUIUpdateRequest() || pd.getUISlot() % refresh == bucket) {
+					pd.updateUIAsync(snap);
+				}
 				if (isMorning) {
 					pd.hideBossBar();
 					pd.clearActionBar();
 				}
-				if (isNight()) {
+				if (snap.isNight()) {
 					if (plr.isSleeping()) {
-						pd.tickTimers(ticks);
+						if (batch) { vitals.add(pd); } else { vitals.tick(pd, ticks); }
 						if (setSleepTicks) {
 							pd.setSleepTicks(0);
 						}
 					}
 				}
-			}
+			});
 		});
+		// Every sleeper is fed and healed in one pass
+		if (batch) { vitals.tick(ticks); }
 		if (setSleepTicks || isMorning) { counter = 0; } else { counter++; }
+		TickProfiler.stop(Phase.TIMESTEP_TIMERS, w, start);
+	}
+
+	/**
+	 * @return True if the boss bar title reads nothing from the player, in which case
+	 * every player in this World is shown the same bar instead of having their own.
+	 */
+	public boolean usesSharedBar() {
+		return pl.data.placeholders.isPlayerIndependent(ws.getTemplate(ConfigHelper.WorldSettingKey.BOSSBAR_TITLE));
+	}
+
+	/**
+	 * Adds the player to this World's shared boss bar, creating it and updating
+	 * its contents if this is the first player shown the bar for the snapshot.
+	 * @param plr The player to show the bar to
+	 * @param snap The snapshot being rendered for
+	 */
+	public synchronized void showSharedBar(Player plr, SleepSnapshot snap) {
+		if (sharedBar == null) {
+			sharedBar = new BarState(pl.getServer().createBossBar("", BarColor.BLUE, BarStyle.SOLID));
+			sharedBarFor = null;
+		}
+		if (sharedBarFor != snap) {
+			sharedBar.update(renderShared(ConfigHelper.WorldSettingKey.BOSSBAR_TITLE, snap, plr),
+					ws.getBarColor(ConfigHelper.WorldSettingKey.BOSSBAR_COLOR), ws.getBarStyle(ConfigHelper.WorldSettingKey.BOSSBAR_STYLE),
+					snap.getTimeRatio(), ws.getInt(ConfigHelper.WorldSettingKey.BOSSBAR_PROGRESS_STEPS));
+			sharedBarFor = snap;
+		}
+		if (sharedBarViewers.add(plr)) { sharedBar.getBar().addPlayer(plr); }
+		sharedBar.show();
+	}
+
+	public synchronized void hideSharedBar(Player plr) {
+		if (sharedBar != null && sharedBarViewers.remove(plr)) { sharedBar.getBar().removePlayer(plr); }
+	}
+
+	// Removes everyone from the shared boss bar and drops it until it's needed again
+	public synchronized void releaseSharedBar() {
+		if (sharedBar != null) { sharedBar.getBar().removeAll(); }
+		sharedBar = null;
+		sharedBarFor = null;
+		sharedBarViewers.clear();
 	}
 
 	public boolean hasAnyWeather() { return w.isThundering() || w.hasStorm(); }
@@ -183,28 +368,42 @@ public class WorldData implements Purgeable {
 	public ConfigHelper.WorldSettings getSettings() { return ws; }
 
 	private boolean sleepTickRunning() {
-		if (sleepTickTask != null && sleepTickTask.isCancelled()) sleepTickTask = null;
-		return sleepTickTask != null;
+		TaskHandle task = sleepTickTask;
+		return task != null && !task.isCancelled();
 	}
 
+	// Started and stopped on the global thread, which is the one that steps the World's time
 	public void startSleepTick() {
 		if (!pl.data.isPluginEnabled()) return;
-		if (sleepTickRunning()) return;
-		tickHelper = new TickHelper(w, ws, ws.getTickOptions());
-		SleepTickTask stt = new SleepTickTask(pl, this);
-		sleepTickTask = stt.runTaskTimer(pl, 0L, 0L);
+		pl.scheduler.runGlobal(() -> {
+			if (sleepTickRunning()) return;
+			reconcileCounter = 0;
+			tickHelper = new TickHelper(w, ws, ws.getTickOptions());
+			SleepTickTask stt = new SleepTickTask(pl, this);
+			sleepTickTask = stt.runTimer(pl.scheduler, 0L, 0L);
+		});
 	}
 
 	public void stopSleepTick() {
-		if (sleepTickRunning()) { sleepTickTask.cancel(); }
-		sleepTickTask = null;
-		if (tickHelper != null) tickHelper.reset();
+		pl.scheduler.runGlobal(() -> {
+			if (sleepTickRunning()) { sleepTickTask.cancel(); }
+			sleepTickTask = null;
+			if (tickHelper != null) tickHelper.reset();
+		});
 	}
 
 	@Override
-	public void purgeData() {
+	public synchronized void purgeData() {
+		if (boundaryTask != null) {
+			boundaryTask.cancel();
+			boundaryTask = null;
+		}
 		if (tickHelper != null) {
 			tickHelper.reset();
 		}
+		index.clear();
+		rendered.clear();
+		renderedFor = null;
+		releaseSharedBar();
 	}
 }
@@ -0,0 +1,222 @@
+package com.luffbox.smoothsleep.commands;
+
+import com.luffbox.smoothsleep.NightSim;
+import com.luffbox.smoothsleep.SmoothSleep;
+import com.luffbox.smoothsleep.lib.ConfigHelper;
+import com.luffbox.smoothsleep.lib.TabExecutor;
+import com.luffbox.smoothsleep.lib.profiler.Histogram;
+import com.luffbox.smoothsleep.lib.profiler.Phase;
+import com.luffbox.smoothsleep.lib.profiler.Send;
+import com.luffbox.smoothsleep.lib.profiler.TickProfiler;
+import com.luffbox.smoothsleep.lib.trace.NightTrace;
+import org.bukkit.World;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.bukkit.ChatColor.*;
+
+/**
+ * /ssdebug [on|off|reset|json|simulate|replay] - Turns the {@link TickProfiler} on or off, and
+ * shows or dumps what it has recorded. 'simulate [players] [sleeping]' models a night with the
+ * {@link NightSim}, and 'replay &lt;trace&gt;' plays a night recorded by the {@link com.luffbox.smoothsleep.lib.trace.TraceRecorder} through the model.
+ * To replay a trace through the plugin itself, run the NightHarnessTest with -Dsmoothsleep.trace=file.
+ * The hot paths are benchmarked with JMH, outside the plugin: mvn -P benchmarks verify -DskipTests
+ */
+public class Debug implements TabExecutor {
+
+	private static final List<String> OPTIONS = Arrays.asList("on", "off", "reset", "json", "simulate", "replay");
+	private static final int MAX_SIM_PLAYERS = 10000;
+
+	private final SmoothSleep pl;
+
+	public Debug(SmoothSleep plugin) { pl = plugin; }
+
+	@Override
+	public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+		if (!sender.hasPermission("smoothsleep.debug")) {
+			sender.sendMessage(RED + "You don't have permission to do this!");
+			return true;
+		}
+		String opt = args.length < 1 ? "" : args[0].toLowerCase(Locale.ENGLISH);
+		switch (opt) {
+			case "on":
+				TickProfiler.setEnabled(true);
+				sender.sendMessage(GREEN + "SmoothSleep profiler enabled");
+				break;
+			case "off":
+				TickProfiler.setEnabled(false);
+				sender.sendMessage(GOLD + "SmoothSleep profiler disabled, recorded times are kept until reset");
+				break;
+			case "reset":
+				TickProfiler.reset();
+				sender.sendMessage(GREEN + "SmoothSleep profiler reset");
+				break;
+			case "json":
+				dump(sender);
+				break;
+			case "simulate":
+				simulate(sender, label, args);
+				break;
+			case "replay":
+				replay(sender, label, args);
+				break;
+			case "":
+				show(sender, label);
+				break;
+			default:
+				sender.sendMessage(RED + "Usage: /" + label + " [" + String.join("|", OPTIONS) + "]");
+				break;
+		}
+		return true;
+	}
+
+	private void show(CommandSender sender, String label) {
+		if (TickProfiler.isEnabled()) {
+			long secs = (System.currentTimeMillis() - TickProfiler.getEnabledAt()) / 1000L;
+			sender.sendMessage(GREEN + "SmoothSleep profiler is on" + GRAY + " (recording for " + secs / 60 + "m " + secs % 60 + "s)");
+		} else {
+			sender.sendMessage(GOLD + "SmoothSleep profiler is off" + GRAY + " (use /" + label + " on)");
+		}
+		StringBuilder sent = new StringBuilder();
+		for (Send type : Send.values()) {
+			sent.append(' ').append(AQUA).append(type.id).append(GRAY).append('=').append(WHITE).append(TickProfiler.getSent(type));
+		}
+		sender.sendMessage(GRAY + "Sent:" + sent);
+		Map<String, Histogram[]> worlds = TickProfiler.getWorlds();
+		if (worlds.isEmpty()) {
+			sender.sendMessage(GRAY + "Nothing recorded yet");
+			return;
+		}
+		for (Map.Entry<String, Histogram[]> entry : worlds.entrySet()) {
+			sender.sendMessage(YELLOW + (TickProfiler.GLOBAL.equals(entry.getKey()) ? "Global" : entry.getKey()));
+			for (Phase phase : Phase.values()) {
+				Histogram h = entry.getValue()[phase.ordinal()];
+				if (h.getCount() == 0) continue;
+				sender.sendMessage("  " + AQUA + phase.id + GRAY + " n=" + WHITE + h.getCount()
+						+ GRAY + " p50=" + WHITE + micros(h.percentile(0.5))
+						+ GRAY + " p99=" + WHITE + micros(h.percentile(0.99))
+						+ GRAY + " max=" + WHITE + micros(h.getMax()));
+			}
+		}
+	}
+
+	private void dump(CommandSender sender) {
+		File dir = new File(pl.getDataFolder(), "debug");
+		String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.ENGLISH).format(new Date());
+		File out = new File(dir, "profile-" + stamp + ".json");
+		try {
+			Files.createDirectories(dir.toPath());
+			Files.write(out.toPath(), TickProfiler.toJson().getBytes(StandardCharsets.UTF_8));
+			sender.sendMessage(GREEN + "Saved profiler data to " + out.getPath());
+		} catch (IOException e) {
+			sender.sendMessage(RED + "Failed to save profiler data: " + e.getMessage());
+		}
+	}
+
+	// The sender's World if it's enabled, otherwise the first enabled World
+	private World settingsWorld(CommandSender sender) {
+		if (sender instanceof Player && pl.data.worldEnabled(((Player) sender).getWorld())) { return ((Player) sender).getWorld(); }
+		return pl.data.config.worlds.keySet().stream().findFirst().orElse(null);
+	}
+
+	private void simulate(CommandSender sender, String label, String[] args) {
+		World w = settingsWorld(sender);
+		ConfigHelper.WorldSettings ws = w == null ? null : pl.data.config.worlds.get(w);
+		if (ws == null) {
+			sender.sendMessage(RED + "There are no enabled worlds to simulate the settings of");
+			return;
+		}
+		NightSim.Scenario sc = new NightSim.Scenario();
+		try {
+			if (args.length > 1) { sc.players = Integer.parseInt(args[1]); }
+			if (args.length > 2) { sc.sleepFraction = Double.parseDouble(args[2]); }
+		} catch (NumberFormatException e) {
+			sender.sendMessage(RED + "Usage: /" + label + " simulate [players] [sleeping, 0-1]");
+			return;
+		}
+		if (sc.players < 1 || sc.players > MAX_SIM_PLAYERS) {
+			sender.sendMessage(RED + "Players must be between 1 and " + MAX_SIM_PLAYERS);
+			return;
+		}
+		sender.sendMessage(GREEN + "Modelling a night in " + w.getName() + " with " + sc.players + " players, "
+				+ Math.round(sc.sleepFraction * 100) + "% sleeping");
+		// Read here, the model itself runs in the background so big nights don't hold up the server
+		NightSim.Settings settings = NightSim.Settings.of(ws, pl.data.baseTimeSpeed);
+		Thread thread = new Thread(() -> {
+			List<String> lines = new ArrayList<>();
+			for (String line : NightSim.run(settings, sc).describe()) { lines.add(GRAY + "  " + line); }
+			pl.scheduler.runGlobal(() -> lines.forEach(sender::sendMessage));
+		}, "SmoothSleep Simulation");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void replay(CommandSender sender, String label, String[] args) {
+		if (args.length < 2) {
+			sender.sendMessage(RED + "Usage: /" + label + " replay <trace>");
+			return;
+		}
+		File file = new File(new File(pl.getDataFolder(), "traces"), args[1].endsWith(NightTrace.EXT) ? args[1] : args[1] + NightTrace.EXT);
+		if (!file.isFile() || !file.getParentFile().equals(new File(pl.getDataFolder(), "traces"))) {
+			sender.sendMessage(RED + "No trace named " + args[1]);
+			return;
+		}
+		World fallback = settingsWorld(sender);
+		double baseSpeed = pl.data.baseTimeSpeed;
+		Thread thread = new Thread(() -> {
+			List<String> lines = new ArrayList<>();
+			try {
+				NightTrace trace = NightTrace.read(file.toPath());
+				World w = pl.data.config.worlds.keySet().stream().filter(x -> x.getName().equals(trace.getWorld()))
+						.findFirst().orElse(fallback);
+				ConfigHelper.WorldSettings ws = w == null ? null : pl.data.config.worlds.get(w);
+				if (ws == null) {
+					lines.add(RED + "There are no enabled worlds to replay with the settings of");
+				} else if (trace.getDropped() > 0) {
+					lines.add(RED + "Can't replay " + args[1] + ", " + trace.getDropped() + " records were dropped while recording");
+				} else {
+					lines.add(GREEN + "Replaying " + trace.getWorld() + " through the night model with the settings of " + w.getName());
+					for (String line : NightSim.replay(NightSim.Settings.of(ws, baseSpeed), trace).describe()) { lines.add(GRAY + "  " + line); }
+				}
+			} catch (IOException e) {
+				lines.add(RED + "Failed to read trace: " + e.getMessage());
+			}
+			pl.scheduler.runGlobal(() -> lines.forEach(sender::sendMessage));
+		}, "SmoothSleep Replay");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private static String micros(long nanos) { return String.format("%.1f\u00b5s", nanos / 1000.0); }
+
+	@Override
+	public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
+		List<String> opts = new ArrayList<>();
+		if (args.length == 1) {
+			for (String opt : OPTIONS) {
+				if (opt.startsWith(args[0].toLowerCase(Locale.ENGLISH))) { opts.add(opt); }
+			}
+		} else if (args.length == 2 && args[0].equalsIgnoreCase("replay")) {
+			String[] traces = new File(pl.getDataFolder(), "traces").list((dir, name) -> name.endsWith(NightTrace.EXT));
+			if (traces != null) {
+				for (String name : traces) {
+					if (name.startsWith(args[1])) { opts.add(name.substring(0, name.length() - NightTrace.EXT.length())); }
+				}
+			}
+		}
+		return opts;
+	}
+}
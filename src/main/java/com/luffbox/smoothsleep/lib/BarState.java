@@ -0,0 +1,61 @@
+package com.luffbox.smoothsleep.lib;
+
+import com.luffbox.smoothsleep.lib.profiler.Send;
+import com.luffbox.smoothsleep.lib.profiler.TickProfiler;
+import org.bukkit.boss.BarColor;
+import org.bukkit.boss.BarStyle;
+import org.bukkit.boss.BossBar;
+
+import java.util.Objects;
+
+/**
+ * Wraps a BossBar and remembers what was last sent to it, so each setter
+ * is only called (and a packet only sent) when the value actually changes.
+ */
+public class BarState {
+
+	private final BossBar bar;
+	private String title;
+	private BarColor color;
+	private BarStyle style;
+	private double progress;
+	private boolean visible;
+
+	public BarState(BossBar bar) {
+		this.bar = bar;
+		title = bar.getTitle();
+		color = bar.getColor();
+		style = bar.getStyle();
+		progress = bar.getProgress();
+		visible = bar.isVisible();
+	}
+
+	public BossBar getBar() { return bar; }
+
+	/**
+	 * Updates the bar, skipping any value that hasn't changed since the last update.
+	 * @param title The bar title
+	 * @param color The bar color, ignored if null
+	 * @param style The bar style, ignored if null
+	 * @param progress The bar progress, between 0 and 1
+	 * @param steps How many distinct steps the progress is rounded to. 0 or less will send every change.
+	 */
+	public void update(String title, BarColor color, BarStyle style, double progress, int steps) {
+		int sent = 0;
+		if (!Objects.equals(this.title, title)) { bar.setTitle(title); this.title = title; sent++; }
+		if (color != null && color != this.color) { bar.setColor(color); this.color = color; sent++; }
+		if (style != null && style != this.style) { bar.setStyle(style); this.style = style; sent++; }
+		progress = quantize(MiscUtils.clamp(progress, 0.0, 1.0), steps);
+		if (progress != this.progress) { bar.setProgress(progress); this.progress = progress; sent++; }
+		if (sent > 0) TickProfiler.count(Send.BOSS_BAR, sent);
+	}
+
+	public void show() { if (!visible) { bar.setVisible(true); visible = true; TickProfiler.count(Send.BOSS_BAR); } }
+	public void hide() { if (visible) { bar.setVisible(false); visible = false; TickProfiler.count(Send.BOSS_BAR); } }
+	public boolean isVisible() { return visible; }
+
+	public static double quantize(double progress, int steps) {
+		if (steps <= 0) return progress;
+		return Math.round(progress * steps) / (double) steps;
+	}
+}
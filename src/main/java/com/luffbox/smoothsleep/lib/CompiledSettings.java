@@ -0,0 +1,140 @@
+package com.luffbox.smoothsleep.lib;
+
+import com.luffbox.smoothsleep.lib.ConfigHelper.WorldSettingKey;
+import com.luffbox.smoothsleep.lib.reward.CommandReward;
+import com.luffbox.smoothsleep.lib.reward.ItemReward;
+import com.luffbox.smoothsleep.lib.reward.PotionReward;
+import com.luffbox.smoothsleep.lib.reward.SleepReward;
+import com.luffbox.smoothsleep.lib.template.Template;
+import org.bukkit.Material;
+import org.bukkit.Particle;
+import org.bukkit.Sound;
+import org.bukkit.World;
+import org.bukkit.boss.BarColor;
+import org.bukkit.boss.BarStyle;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.potion.PotionEffect;
+import org.bukkit.potion.PotionEffectType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.luffbox.smoothsleep.lib.ConfigHelper.WorldSettingKey.*;
+
+/**
+ * An immutable copy of a single World's settings with every value already read
+ * from the config and resolved to its final type. Values are stored by the ordinal
+ * of their {@link WorldSettingKey}, so reading one is an array access rather than
+ * a config path lookup. A new instance is built whenever the World's settings change.
+ * @see ConfigHelper.WorldSettings
+ */
+public final class CompiledSettings {
+
+	private static final WorldSettingKey[] KEYS = WorldSettingKey.values();
+
+	private final int[] ints = new int[KEYS.length];
+	private final double[] doubles = new double[KEYS.length];
+	private final boolean[] booleans = new boolean[KEYS.length];
+	private final String[] strings = new String[KEYS.length];
+
+	// String settings resolved to whatever type they happen to name
+	private final Map<WorldSettingKey, Sound> sounds = new EnumMap<>(WorldSettingKey.class);
+	private final Map<WorldSettingKey, Particle> particles = new EnumMap<>(WorldSettingKey.class);
+	private final Map<WorldSettingKey, BarColor> barColors = new EnumMap<>(WorldSettingKey.class);
+	private final Map<WorldSettingKey, BarStyle> barStyles = new EnumMap<>(WorldSettingKey.class);
+
+	private final Map<WorldSettingKey, Template> templates = new EnumMap<>(WorldSettingKey.class);
+	private final List<PotionEffect> rewardEffects;
+	private final List<SleepReward> rewards;
+
+	CompiledSettings(ConfigHelper conf, World w) {
+		for (WorldSettingKey key : KEYS) {
+			int i = key.ordinal();
+			if (key.type == int.class) {
+				ints[i] = conf.getInt(w, key);
+			} else if (key.type == double.class) {
+				doubles[i] = conf.getDouble(w, key);
+			} else if (key.type == boolean.class) {
+				booleans[i] = conf.getBoolean(w, key);
+			} else if (key.type == String.class) {
+				String val = conf.getString(w, key);
+				strings[i] = val;
+				putIfFound(sounds, key, ConfigHelper.soundByName(val));
+				putIfFound(particles, key, ConfigHelper.particleByName(val));
+				putIfFound(barColors, key, ConfigHelper.barColorByName(val));
+				putIfFound(barStyles, key, ConfigHelper.barStyleByName(val));
+				if (ConfigHelper.placeholderKeys.contains(key)) { templates.put(key, Template.compile(val)); }
+			}
+		}
+
+		List<PotionEffect> effects = new ArrayList<>();
+		ConfigurationSection potFx = conf.getConfSection(w, REWARD_EFFECT_LIST);
+		boolean showParticles = booleans[REWARD_EFFECT_PARTICLES.ordinal()];
+		for (String key : potFx.getKeys(false)) {
+			PotionEffectType pet = ConfigHelper.getPotionEffect(key);
+			int duration = potFx.getInt(key + ".duration");
+			if (pet != null && duration > 0) {
+				effects.add(new PotionEffect(pet, duration, potFx.getInt(key + ".amplifier"), true, showParticles, true));
+			}
+		}
+		rewardEffects = Collections.unmodifiableList(effects);
+
+		List<SleepReward> rwds = new ArrayList<>();
+		if (booleans[REWARD_EFFECT_ENABLED.ordinal()] && !rewardEffects.isEmpty()) {
+			rwds.add(new PotionReward(ints[REWARD_EFFECT_SLEEP_HOURS.ordinal()], rewardEffects));
+		}
+		if (booleans[REWARD_COMMAND_ENABLED.ordinal()]) {
+			ConfigurationSection cmds = conf.getConfSection(w, REWARD_COMMAND_LIST);
+			for (String key : cmds.getKeys(false)) {
+				String cmd = cmds.getString(key);
+				if (cmd != null && !cmd.isEmpty()) { rwds.add(new CommandReward(ints[REWARD_COMMAND_SLEEP_HOURS.ordinal()], cmd)); }
+			}
+		}
+		if (booleans[REWARD_ITEM_ENABLED.ordinal()]) {
+			ConfigurationSection items = conf.getConfSection(w, REWARD_ITEM_LIST);
+			for (String key : items.getKeys(false)) {
+				Material mat = Material.matchMaterial(key);
+				int amount = items.getInt(key);
+				if (mat != null && mat.isItem() && amount > 0) {
+					rwds.add(new ItemReward(ints[REWARD_ITEM_SLEEP_HOURS.ordinal()], new ItemStack(mat, amount)));
+				}
+			}
+		}
+		rewards = Collections.unmodifiableList(rwds);
+	}
+
+	private static <T> void putIfFound(Map<WorldSettingKey, T> map, WorldSettingKey key, T val) {
+		if (val != null) map.put(key, val);
+	}
+
+	public int getInt(WorldSettingKey setting) { return setting.type == int.class ? ints[setting.ordinal()] : 0; }
+	public double getDouble(WorldSettingKey setting) { return setting.type == double.class ? doubles[setting.ordinal()] : 0.0; }
+	public boolean getBoolean(WorldSettingKey setting) { return setting.type == boolean.class && booleans[setting.ordinal()]; }
+	public String getString(WorldSettingKey setting) { return setting.type == String.class ? strings[setting.ordinal()] : ""; }
+	public Sound getSound(WorldSettingKey setting) { return sounds.get(setting); }
+	public Particle getParticle(WorldSettingKey setting) { return particles.get(setting); }
+	public BarColor getBarColor(WorldSettingKey setting) { return barColors.get(setting); }
+	public BarStyle getBarStyle(WorldSettingKey setting) { return barStyles.get(setting); }
+
+	/**
+	 * @param setting A key which supports placeholders, such as {@link WorldSettingKey#SLEEP_TITLE}
+	 * @return The compiled template, or an empty template if the key doesn't support placeholders
+	 */
+	public Template getTemplate(WorldSettingKey setting) { return templates.getOrDefault(setting, Template.EMPTY); }
+
+	/**
+	 * @return The sleep reward potion effects, ready to be applied. Effects with an
+	 * unknown type or no duration have already been filtered out.
+	 */
+	public List<PotionEffect> getRewardEffects() { return rewardEffects; }
+
+	/**
+	 * @return Every enabled sleep reward, ready to be given out. Commands that are
+	 * empty and items that aren't valid have already been filtered out.
+	 */
+	public List<SleepReward> getRewards() { return rewards; }
+}
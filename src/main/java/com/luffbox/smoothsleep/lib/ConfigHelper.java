@@ -1,8 +1,13 @@
 package com.luffbox.smoothsleep.lib;
 
 import com.luffbox.smoothsleep.SmoothSleep;
-import com.luffbox.smoothsleep.lib.particle.ParticlePatternType;
+import com.luffbox.smoothsleep.lib.particle.ParticlePattern;
+import com.luffbox.smoothsleep.lib.particle.ParticlePatterns;
+import com.luffbox.smoothsleep.lib.reward.SleepReward;
+import com.luffbox.smoothsleep.lib.template.Placeholder;
+import com.luffbox.smoothsleep.lib.template.Template;
 import org.bukkit.Bukkit;
+import org.bukkit.Material;
 import org.bukkit.Particle;
 import org.bukkit.Sound;
 import org.bukkit.World;
@@ -10,14 +15,17 @@ import org.bukkit.boss.BarColor;
 import org.bukkit.boss.BarStyle;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.MemoryConfiguration;
+import org.bukkit.potion.PotionEffect;
 import org.bukkit.potion.PotionEffectType;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 
@@ -48,7 +56,14 @@ public class ConfigHelper {
 	public static Set<Particle> requiresData = Set.of(DUST, BLOCK_MARKER, FALLING_DUST);
 	public static boolean firstRun;
 
-	private static String validBarColors, validBarStyles, validParticlePatternTypes;
+	private static String validBarColors, validBarStyles;
+
+	// Name lookups are built on first use. Settings are read from other threads (async rendering,
+	// /ssdebug replay), so each is kept in a holder class, which the JVM initializes once for every thread.
+	private static final class SoundNames { private static final Map<String, Sound> MAP = byName(Sound.values()); }
+	private static final class ParticleNames { private static final Map<String, Particle> MAP = byName(Particle.values()); }
+	private static final class BarColorNames { private static final Map<String, BarColor> MAP = byName(BarColor.values()); }
+	private static final class BarStyleNames { private static final Map<String, BarStyle> MAP = byName(BarStyle.values()); }
 
 	// If a config option within the world settings has been moved, adding it here should
 	// copy the value from the old key into it's new position and remove the old key.
@@ -73,8 +88,8 @@ public class ConfigHelper {
 		put("essentials-settings.ignore-vanish",	IGNORE_VANISH);
 	}};
 
-	// A list of keys supporting placeholder text
-	private final Set<WorldSettingKey> placeholderKeys = new HashSet<>() {{
+	// A list of keys supporting placeholder text, these are compiled into templates
+	static final Set<WorldSettingKey> placeholderKeys = new HashSet<>() {{
 		add(SLEEP_TITLE);
 		add(SLEEP_SUBTITLE);
 		add(MORNING_TITLE);
@@ -88,7 +103,7 @@ public class ConfigHelper {
 		this.conf = this;
 		firstRun = !new File(ss.getDataFolder(), "config.yml").isFile();
 
-		ss.getServer().getScheduler().runTaskLater(ss, () -> {
+		ss.scheduler.runLater(() -> {
 			if (firstRun) {
 				SmoothSleep.logInfo("\n==========\n"
 						+ "This message is to let you know that SmoothSleep transmits some data to the bStats.org "
@@ -108,6 +123,16 @@ public class ConfigHelper {
 		ENABLE_STATS("enable-stats", boolean.class),
 		ENABLE_UPDATE("enable-update-check", boolean.class),
 		UPDATE_NOTIFY("update-notify-login", boolean.class),
+		PERM_REFRESH_TICKS("permission-refresh-ticks", int.class),
+		PARTICLE_BUDGET("particle-budget-per-tick", int.class),
+		MORNING_EFFECTS_BUDGET_MS("morning-effects-budget-ms", double.class),
+		WAKE_PER_TICK("wake-queue.per-tick", int.class),
+		WAKE_MAX_TICKS("wake-queue.max-ticks", int.class),
+		REWARDS_PER_TICK("reward-queue-per-tick", int.class),
+		ASYNC_RENDER("async-rendering.enabled", boolean.class),
+		ASYNC_RENDER_THREADS("async-rendering.threads", int.class),
+		TRACE_ENABLED("night-trace.enabled", boolean.class),
+		TRACE_KEEP("night-trace.keep", int.class),
 		LOG_DEBUG("logging-settings.log-debug", boolean.class),
 		LOG_INFO("logging-settings.log-info", boolean.class),
 		LOG_WARNING("logging-settings.log-warning", boolean.class),
@@ -150,6 +175,7 @@ public class ConfigHelper {
 		IGNORE_AFK("compatibility-settings.ignore-afk", boolean.class),
 		IGNORE_VANISH("compatibility-settings.ignore-vanish", boolean.class),
 		HEAL_VILLAGERS("heal-slept-villagers", boolean.class),
+		UI_REFRESH_TICKS("ui-refresh-ticks", int.class),
 
 		HEAL_AMOUNT("replenish-settings.heal-amount", int.class),
 		HEAL_TICKS("replenish-settings.ticks-per-heal", int.class),
@@ -169,6 +195,12 @@ public class ConfigHelper {
 		REWARD_EFFECT_SLEEP_HOURS("sleep-rewards.potion-effects.required-hours-sleep", int.class),
 		REWARD_EFFECT_PARTICLES("sleep-rewards.potion-effects.show-effect-particles", boolean.class),
 		REWARD_EFFECT_LIST("sleep-rewards.potion-effects.effects", ConfigurationSection.class),
+		REWARD_COMMAND_ENABLED("sleep-rewards.commands.enabled", boolean.class),
+		REWARD_COMMAND_SLEEP_HOURS("sleep-rewards.commands.required-hours-sleep", int.class),
+		REWARD_COMMAND_LIST("sleep-rewards.commands.commands", ConfigurationSection.class),
+		REWARD_ITEM_ENABLED("sleep-rewards.items.enabled", boolean.class),
+		REWARD_ITEM_SLEEP_HOURS("sleep-rewards.items.required-hours-sleep", int.class),
+		REWARD_ITEM_LIST("sleep-rewards.items.items", ConfigurationSection.class),
 
 		PARTICLE_ENABLED("morning-particle-options.enabled", boolean.class),
 		PARTICLE_TYPE("morning-particle-options.particle", String.class),
@@ -176,6 +208,7 @@ public class ConfigHelper {
 		PARTICLE_RADIUS("morning-particle-options.radius", double.class),
 		PARTICLE_DELAY("morning-particle-options.delay-ticks", int.class),
 		PARTICLE_PATTERN("morning-particle-options.pattern", String.class),
+		PARTICLE_VIEW_DISTANCE("morning-particle-options.view-distance", double.class),
 
 		TITLES_ENABLED("titles.enabled", boolean.class),
 		SLEEP_TITLE("titles.sleep-title", String.class),
@@ -194,6 +227,7 @@ public class ConfigHelper {
 		BOSSBAR_COLOR("boss-bar.color", String.class),
 		BOSSBAR_STYLE("boss-bar.style", String.class),
 		BOSSBAR_TITLE("boss-bar.title", String.class),
+		BOSSBAR_PROGRESS_STEPS("boss-bar.progress-steps", int.class),
 		;
 
 		public final String key;
@@ -215,11 +249,26 @@ public class ConfigHelper {
 	 * the default value if no value is present.
 	 * If the type of the WorldSettingKey does not match the value
 	 * requested: 0, false, or an empty string will be returned.
+	 * Getters read from a {@link CompiledSettings} which is swapped
+	 * out whenever this World's settings are changed.
 	 */
 	public class WorldSettings {
 		private final World w;
+		private volatile CompiledSettings compiled;
+
+		public WorldSettings(World w) {
+			this.w = w;
+			compile();
+		}
+
+		public World getWorld() { return w; }
 
-		public WorldSettings(World w) { this.w = w; }
+		/**
+		 * Reads this World's settings from the config again. Called automatically
+		 * when a value is set through the {@link ConfigHelper}.
+		 */
+		public void compile() { compiled = new CompiledSettings(conf, w); }
+		public CompiledSettings getCompiled() { return compiled; }
 
 		public TickOptions getTickOptions() {
 			TickOptions opt = new TickOptions();
@@ -228,16 +277,19 @@ public class ConfigHelper {
 			return opt;
 		}
 
-		public int getInt(WorldSettingKey setting) { return setting.type == int.class ? conf.getInt(w, setting.key) : 0; }
-		public double getDouble(WorldSettingKey setting) { return setting.type == double.class ? conf.getDouble(w, setting.key) : 0.0; }
-		public boolean getBoolean(WorldSettingKey setting) { return setting.type == boolean.class && conf.getBoolean(w, setting); }
-		public String getString(WorldSettingKey setting) { return setting.type == String.class ? conf.getString(w, setting) : ""; }
+		public int getInt(WorldSettingKey setting) { return compiled.getInt(setting); }
+		public double getDouble(WorldSettingKey setting) { return compiled.getDouble(setting); }
+		public boolean getBoolean(WorldSettingKey setting) { return compiled.getBoolean(setting); }
+		public String getString(WorldSettingKey setting) { return compiled.getString(setting); }
 		public ConfigurationSection getConfSection(WorldSettingKey setting) { return setting.type == ConfigurationSection.class ? conf.getConfSection(w, setting) : new MemoryConfiguration(); }
-		public Sound getSound(WorldSettingKey setting) { return setting.type == String.class ? conf.getSound(w, setting) : null; }
-		public Particle getParticle(WorldSettingKey setting) { return setting.type == String.class ? conf.getParticle(w, setting) : null; }
-		public BarColor getBarColor(WorldSettingKey setting) { return setting.type == String.class ? conf.getBarColor(w, setting) : null; }
-		public BarStyle getBarStyle(WorldSettingKey setting) { return setting.type == String.class ? conf.getBarStyle(w, setting) : null; }
-		public ParticlePatternType getPatternType(WorldSettingKey setting) { return setting.type == String.class ? conf.getPatternType(w, setting) : null; }
+		public Sound getSound(WorldSettingKey setting) { return compiled.getSound(setting); }
+		public Particle getParticle(WorldSettingKey setting) { return compiled.getParticle(setting); }
+		public BarColor getBarColor(WorldSettingKey setting) { return compiled.getBarColor(setting); }
+		public BarStyle getBarStyle(WorldSettingKey setting) { return compiled.getBarStyle(setting); }
+		public ParticlePattern getPattern(WorldSettingKey setting) { return ParticlePatterns.get(getString(setting)); }
+		public List<PotionEffect> getRewardEffects() { return compiled.getRewardEffects(); }
+		public List<SleepReward> getRewards() { return compiled.getRewards(); }
+		public Template getTemplate(WorldSettingKey setting) { return compiled.getTemplate(setting); }
 
 		public boolean contains(WorldSettingKey setting) { return conf.contains(w, setting); }
 
@@ -297,45 +349,25 @@ public class ConfigHelper {
 	public ConfigurationSection getDefaultConfSection(GlobalSettingKey key) { return getDefaultConfSection(key.key); }
 	public ConfigurationSection getDefaultConfSection(WorldSettingKey key) { return getDefaultConfSection(defWorldPre + key.key); }
 
-	public Sound getSound(String path) {
-		String p = getString(path);
-		for (Sound sound : Sound.values()) { if (sound.name().equalsIgnoreCase(p)) return sound; }
-		return null;
-	}
+	public Sound getSound(String path) { return soundByName(getString(path)); }
 	public Sound getSound(World w, String path) { return getSound(path(w) + "." + path); }
 	public Sound getSound(World w, WorldSettingKey key) { return getSound(w, key.key); }
 
-	public Particle getParticle(String path) {
-		String p = getString(path);
-		for (Particle particle : Particle.values()) { if (particle.name().equalsIgnoreCase(p)) return particle; }
-		return null;
-	}
+	public Particle getParticle(String path) { return particleByName(getString(path)); }
 	public Particle getParticle(World w, String path) { return getParticle(path(w) + "." + path); }
 	public Particle getParticle(World w, WorldSettingKey key) { return getParticle(w, key.key); }
 
-	public BarColor getBarColor(String path) {
-		String p = getString(path);
-		for (BarColor color : BarColor.values()) { if (color.name().equalsIgnoreCase(p)) return color; }
-		return null;
-	}
+	public BarColor getBarColor(String path) { return barColorByName(getString(path)); }
 	public BarColor getBarColor(World w, String path) { return getBarColor(path(w) + "." + path); }
 	public BarColor getBarColor(World w, WorldSettingKey key) { return getBarColor(w, key.key); }
 
-	public BarStyle getBarStyle(String path) {
-		String p = getString(path);
-		for (BarStyle style : BarStyle.values()) { if (style.name().equalsIgnoreCase(p)) return style; }
-		return null;
-	}
+	public BarStyle getBarStyle(String path) { return barStyleByName(getString(path)); }
 	public BarStyle getBarStyle(World w, String path) { return getBarStyle(path(w) + "." + path); }
 	public BarStyle getBarStyle(World w, WorldSettingKey key) { return getBarStyle(w, key.key); }
 
-	public ParticlePatternType getPatternType(String path) {
-		String p = getString(path);
-		for (ParticlePatternType type : ParticlePatternType.values()) { if (type.name().equalsIgnoreCase(p)) return type; }
-		return null;
-	}
-	public ParticlePatternType getPatternType(World w, String path) { return getPatternType(path(w) + "." + path); }
-	public ParticlePatternType getPatternType(World w, WorldSettingKey key) { return getPatternType(w, key.key); }
+	public ParticlePattern getPattern(String path) { return ParticlePatterns.get(getString(path)); }
+	public ParticlePattern getPattern(World w, String path) { return getPattern(path(w) + "." + path); }
+	public ParticlePattern getPattern(World w, WorldSettingKey key) { return getPattern(w, key.key); }
 
 	public boolean isSection(String path) { return ss.getConfig().isConfigurationSection(path); }
 	public boolean isSection(GlobalSettingKey key) { return isSection(key.key); }
@@ -349,13 +381,18 @@ public class ConfigHelper {
 
 	public void set(String path, Object value) { ss.getConfig().set(path, value); }
 	public void set(GlobalSettingKey key, Object value) { set(key.key, value); }
-	public void set(World w, String path, Object value) { set(path(w) + "." + path, value); }
+	public void set(World w, String path, Object value) {
+		set(path(w) + "." + path, value);
+		WorldSettings ws = worlds.get(w);
+		if (ws != null) ws.compile(); // Keep the compiled settings in sync with the config
+	}
 	public void set(World w, WorldSettingKey key, Object value) { set(w, key.key, value); }
 
 	public void save() { ss.saveConfig(); }
 
 	public void reload() {
 		worlds.clear();
+		Placeholder.refreshServerValues();
 
 		ss.saveDefaultConfig();
 		ss.reloadConfig();
@@ -466,12 +503,26 @@ public class ConfigHelper {
 						changed = true;
 					}
 
+					// UI refresh has to happen at least once per tick, and a full second between refreshes is already plenty slow
+					if (ws.getInt(UI_REFRESH_TICKS) < 1 || ws.getInt(UI_REFRESH_TICKS) > 20) {
+						SmoothSleep.logWarning(path(w, UI_REFRESH_TICKS) + ": '" + ws.getInt(UI_REFRESH_TICKS) + "' must be between 1 and 20!");
+						ws.set(UI_REFRESH_TICKS, MiscUtils.clamp(ws.getInt(UI_REFRESH_TICKS), 1, 20));
+						changed = true;
+					}
+
 					// Make sure the particle radius is positive. Probably won't break anything but just to be safe
 					if (ws.getDouble(PARTICLE_RADIUS) < 0.0) {
 						ws.set(PARTICLE_RADIUS, Math.abs(ws.getDouble(PARTICLE_RADIUS)));
 						changed = true;
 					}
 
+					// Particles are never sent to anyone if the view distance isn't positive
+					if (ws.getDouble(PARTICLE_VIEW_DISTANCE) <= 0.0) {
+						SmoothSleep.logWarning(path(w, PARTICLE_VIEW_DISTANCE) + ": '" + ws.getDouble(PARTICLE_VIEW_DISTANCE) + "' must be greater than 0!");
+						ws.set(PARTICLE_VIEW_DISTANCE, 32.0);
+						changed = true;
+					}
+
 					// Putting a max value on particle radius to prevent senseless radius values. Don't want to affect the whole world
 					if (ws.getDouble(PARTICLE_RADIUS) > 20.0) {
 						SmoothSleep.logWarning(path(w, PARTICLE_RADIUS) + ": '" + ws.getDouble(PARTICLE_RADIUS) + "' can't be greater than 20!");
@@ -545,6 +596,15 @@ public class ConfigHelper {
 							SmoothSleep.logWarning("For a list of valid potion effects, refer to https://hub.spigotmc.org/javadocs/spigot/org/bukkit/potion/PotionEffectType.html");
 						}
 					}
+
+					ConfigurationSection itemRewards = ws.getConfSection(REWARD_ITEM_LIST);
+					for (String key : itemRewards.getKeys(false)) {
+						Material mat = Material.matchMaterial(key);
+						if (mat == null || !mat.isItem()) {
+							SmoothSleep.logWarning("'" + key + "' does not appear to be a valid item!");
+							SmoothSleep.logWarning("For a list of valid items, refer to https://hub.spigotmc.org/javadocs/spigot/org/bukkit/Material.html");
+						}
+					}
 				}
 			} else if (contains(path(w))) {
 				SmoothSleep.logWarning("World is not a normal environment type (world: " + w.getName() + ", environment: " + w.getEnvironment().name().toLowerCase() + ")");
@@ -557,24 +617,38 @@ public class ConfigHelper {
 	public static String path(World w) { return "worlds." + w.getName(); }
 	public static String path(World w, WorldSettingKey key) { return path(w) + "." + key.key; }
 
-	public static boolean isValidSound(String name) {
-		for (Sound snd : Sound.values()) { if (snd.name().equalsIgnoreCase(name)) { return true; } } return false;
+	public static boolean isValidSound(String name) { return soundByName(name) != null; }
+	public static boolean isValidParticle(String name) { return particleByName(name) != null; }
+	public static boolean isValidBarColor(String name) { return barColorByName(name) != null; }
+	public static boolean isValidBarStyle(String name) { return barStyleByName(name) != null; }
+	public static boolean isValidPattern(String name) { return ParticlePatterns.get(name) != null; }
+
+	// Name lookups are built once instead of scanning values() (which copies the array) on every call
+
+	public static Sound soundByName(String name) {
+		return lookup(SoundNames.MAP, name);
+	}
+
+	public static Particle particleByName(String name) {
+		return lookup(ParticleNames.MAP, name);
 	}
 
-	public static boolean isValidParticle(String name) {
-		for (Particle prt : Particle.values()) { if (prt.name().equalsIgnoreCase(name)) { return true; } } return false;
+	public static BarColor barColorByName(String name) {
+		return lookup(BarColorNames.MAP, name);
 	}
 
-	public static boolean isValidBarColor(String name) {
-		for (BarColor clr : BarColor.values()) { if (clr.name().equalsIgnoreCase(name)) { return true; } } return false;
+	public static BarStyle barStyleByName(String name) {
+		return lookup(BarStyleNames.MAP, name);
 	}
 
-	public static boolean isValidBarStyle(String name) {
-		for (BarStyle style : BarStyle.values()) { if (style.name().equalsIgnoreCase(name)) { return true; } } return false;
+	private static <E extends Enum<E>> Map<String, E> byName(E[] values) {
+		Map<String, E> map = new HashMap<>();
+		for (E val : values) { map.put(val.name().toUpperCase(Locale.ENGLISH), val); }
+		return Collections.unmodifiableMap(map);
 	}
 
-	public static boolean isValidPattern(String name) {
-		for (ParticlePatternType ppt : ParticlePatternType.values()) { if (ppt.name().equalsIgnoreCase(name)) { return true; } } return false;
+	private static <E> E lookup(Map<String, E> map, String name) {
+		return name == null ? null : map.get(name.toUpperCase(Locale.ENGLISH));
 	}
 
 	public static boolean isValidPotionEffect(String name) {
@@ -611,17 +685,8 @@ public class ConfigHelper {
 		return validBarStyles;
 	}
 
-	public static String validParticlePatternTypes() {
-		if (validParticlePatternTypes == null) {
-			StringBuilder sb = new StringBuilder();
-			for (ParticlePatternType x : ParticlePatternType.values()) {
-				if (sb.length() > 0) { sb.append(", "); }
-				sb.append(x.name());
-			}
-			validParticlePatternTypes = sb.toString();
-		}
-		return validParticlePatternTypes;
-	}
+	// Not cached like the others, since other plugins can register patterns at any time
+	public static String validParticlePatternTypes() { return String.join(", ", ParticlePatterns.names()); }
 
 
 }
@@ -44,6 +44,7 @@ public class MiscUtils {
 
 	public static double clamp(double val, double min, double max) { return Math.min(max, Math.max(min, val)); }
 	public static int clamp(int val, int min, int max) { return Math.min(max, Math.max(min, val)); }
+	public static long clamp(long val, long min, long max) { return Math.min(max, Math.max(min, val)); }
 
 	public static int ticksTo24Hours(long ticks) {
 		ticks += 6000;
@@ -117,6 +118,12 @@ public class MiscUtils {
 	}
 	public static boolean near(double a, double b) { return Math.abs(a - b) < 0.0001f; }
 
+	/**
+	 * Builds a substitutor with every placeholder value filled in. This is kept for
+	 * {@link com.luffbox.smoothsleep.lib.hooks.PlaceholderHelper} implementations that
+	 * work on plain strings; SmoothSleep itself renders compiled templates instead.
+	 * @see com.luffbox.smoothsleep.lib.template.Template
+	 */
 	public static StrSubstitutor sub(World w, Player p, int sc, int wc, double timescale, long ticksSlept, String nickname) {
 		long worldTime = w.getTime();
 		long timeLived = p.getTicksLived();
@@ -161,15 +168,19 @@ public class MiscUtils {
 	}
 
 	private static String bar(int val, int size, int seg) {
+		StringBuilder sb = new StringBuilder();
+		appendBar(sb, val, size, seg);
+		return sb.toString();
+	}
+
+	public static void appendBar(StringBuilder sb, int val, int size, int seg) {
 		char fillSym = '\u28FF';
 		int filled = (int) remapValue(true, 0, size, 0, seg, val);
 		int remain = seg - filled;
-		StringBuilder sb = new StringBuilder();
 		for (int i = 0; i < filled; i++) { sb.append(fillSym); }
 		sb.append(ChatColor.BLACK);
 		for (int i = 0; i < remain; i++) { sb.append(fillSym); }
 		sb.append(ChatColor.RESET);
-		return sb.toString();
 	}
 
 	public static void filterTrace(Exception ex, String filter) {
@@ -0,0 +1,40 @@
+package com.luffbox.smoothsleep.lib;
+
+import com.luffbox.smoothsleep.SmoothSleep;
+import org.bukkit.entity.Player;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Caches a player's SmoothSleep permissions so the sleep tick never has to
+ * ask the permission plugin. The cache is refreshed on join, world change and
+ * night start, and optionally every few minutes (see 'permission-refresh-ticks').
+ * Other plugins can force a refresh with {@link SmoothSleep#invalidatePermissions(Player)}.
+ */
+public class PermCache {
+
+	public enum Perm {
+		IGNORE(SmoothSleep.PERM_IGNORE),
+		IGNORE_FEED(SmoothSleep.PERM_IGNORE_FEED),
+		IGNORE_HEAL(SmoothSleep.PERM_IGNORE_HEAL),
+		SLEEP_REWARD(SmoothSleep.PERM_SLEEP_REWARD);
+
+		public final String node;
+		Perm(String node) { this.node = node; }
+	}
+
+	private final Player plr;
+	private final Set<Perm> granted = EnumSet.noneOf(Perm.class);
+
+	public PermCache(Player player) { plr = player; }
+
+	public void refresh() {
+		granted.clear();
+		for (Perm perm : Perm.values()) {
+			if (plr.hasPermission(perm.node)) granted.add(perm);
+		}
+	}
+
+	public boolean has(Perm perm) { return granted.contains(perm); }
+}
@@ -17,30 +17,54 @@ public class PlayerTimers {
 		SLPT
 	}
 
-	private double foodTimer = 0L, healTimer = 0L, slptTimer = 0L;
+	private final TimerStore store;
+	private final int slot, i;
+	private final TimerStore.Page page;
+	private boolean released = false;
+
+	/**
+	 * @param store The store holding the timer values. A slot is taken from it until {@link #release()}.
+	 */
+	public PlayerTimers(TimerStore store) {
+		this.store = store;
+		slot = store.allocate();
+		page = store.page(slot);
+		i = slot & TimerStore.PAGE_MASK;
+	}
+
+	/**
+	 * @return This player's index in the {@link TimerStore} arrays
+	 */
+	public int getSlot() { return slot; }
+
+	public void release() {
+		if (released) return;
+		released = true;
+		store.release(slot);
+	}
 
 	public void incAll(double amount) { incFood(amount); incHeal(amount); incSlpt(amount); }
-	public void incFood(double amount) { foodTimer += amount; }
-	public void incHeal(double amount) { healTimer += amount; }
-	public void incSlpt(double amount) { slptTimer += amount; }
+	public void incFood(double amount) { page.food[i] += amount; }
+	public void incHeal(double amount) { page.heal[i] += amount; }
+	public void incSlpt(double amount) { page.slpt[i] += amount; }
 
 	public void decAll(double amount) { decFood(amount); decHeal(amount); decSlpt(amount); }
-	public void decFood(double amount) { foodTimer -= amount; }
-	public void decHeal(double amount) { healTimer -= amount; }
-	public void decSlpt(double amount) { slptTimer -= amount; }
+	public void decFood(double amount) { page.food[i] -= amount; }
+	public void decHeal(double amount) { page.heal[i] -= amount; }
+	public void decSlpt(double amount) { page.slpt[i] -= amount; }
 
 	public void setAll(double amount) { setFood(amount); setHeal(amount); setSlpt(amount); }
-	public void setFood(double amount) { foodTimer = amount; }
-	public void setHeal(double amount) { healTimer = amount; }
-	public void setSlpt(double amount) { slptTimer = amount; }
+	public void setFood(double amount) { page.food[i] = amount; }
+	public void setHeal(double amount) { page.heal[i] = amount; }
+	public void setSlpt(double amount) { page.slpt[i] = amount; }
 
-	public double getFood() { return foodTimer; }
-	public double getHeal() { return healTimer; }
-	public double getSlpt() { return slptTimer; }
+	public double getFood() { return page.food[i]; }
+	public double getHeal() { return page.heal[i]; }
+	public double getSlpt() { return page.slpt[i]; }
 
 	public void resetAll() { resetFood(); resetHeal(); resetSlpt(); }
-	public void resetFood() { foodTimer = 0L; }
-	public void resetHeal() { healTimer = 0L; }
-	public void resetSlpt() { slptTimer = 0L; }
+	public void resetFood() { page.food[i] = 0L; }
+	public void resetHeal() { page.heal[i] = 0L; }
+	public void resetSlpt() { page.slpt[i] = 0L; }
 
 }
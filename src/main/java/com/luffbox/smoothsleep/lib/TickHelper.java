@@ -9,6 +9,7 @@ public class TickHelper {
 	private final ConfigHelper.WorldSettings ws;
 	private final TickOptions options;
 	private int randTickSpeed;
+	private boolean settingTime = false;
 
 	public TickHelper(World world, ConfigHelper.WorldSettings settings, TickOptions options) {
 		if (world == null) { throw new NullPointerException(); }
@@ -20,7 +21,13 @@ public class TickHelper {
 	}
 
 	public void tick(int ticks) {
-		w.setTime(w.getTime() + ticks);
+		// setTime fires a TimeSkipEvent right away, which listeners can tell apart with isSettingTime()
+		settingTime = true;
+		try {
+			w.setTime(w.getTime() + ticks);
+		} finally {
+			settingTime = false;
+		}
 		if (options.weather) { w.setWeatherDuration(w.getWeatherDuration() - ticks); }
 		if (options.randomTick) {
 			int rts = Math.min(randTickSpeed * ticks, ws.getInt(ConfigHelper.WorldSettingKey.MAX_RAND_TICK));
@@ -28,6 +35,12 @@ public class TickHelper {
 		}
 	}
 
+	/**
+	 * @return True while this helper is changing the World's time, such as when
+	 *         a TimeSkipEvent is fired by the sleep tick itself
+	 */
+	public boolean isSettingTime() { return settingTime; }
+
 	public void reset() { w.setGameRule(GameRule.RANDOM_TICK_SPEED, randTickSpeed); }
 
 }
@@ -0,0 +1,86 @@
+package com.luffbox.smoothsleep.lib;
+
+import java.util.Arrays;
+
+/**
+ * Holds the food, heal and slept timers of every player in parallel arrays,
+ * indexed by a slot each {@link PlayerTimers} is given when it's created.
+ * Advancing the timers of every sleeper is then one loop over plain arrays
+ * instead of three calls on each player's timer object.
+ * <p>
+ * The arrays are split into fixed size pages that are never copied, so a player's
+ * timers stay in the same place when the store grows. On Folia, where players are
+ * added and ticked on different threads, no write can land in an old copy.
+ */
+public class TimerStore {
+
+	static final int PAGE_BITS = 6;
+	static final int PAGE_SIZE = 1 << PAGE_BITS;
+	static final int PAGE_MASK = PAGE_SIZE - 1;
+
+	static final class Page {
+		final double[] food = new double[PAGE_SIZE];
+		final double[] heal = new double[PAGE_SIZE];
+		final double[] slpt = new double[PAGE_SIZE];
+	}
+
+	private volatile Page[] pages = { new Page() };
+	private int[] free = new int[PAGE_SIZE];
+	private int size = 0, freeCount = 0;
+
+	/**
+	 * @return A slot with all three timers set to 0
+	 */
+	public synchronized int allocate() {
+		int slot;
+		if (freeCount > 0) {
+			slot = free[--freeCount];
+		} else {
+			if (size == pages.length * PAGE_SIZE) {
+				Page[] grown = Arrays.copyOf(pages, pages.length + 1);
+				grown[pages.length] = new Page();
+				pages = grown;
+			}
+			slot = size++;
+		}
+		Page page = page(slot);
+		int i = slot & PAGE_MASK;
+		page.food[i] = 0;
+		page.heal[i] = 0;
+		page.slpt[i] = 0;
+		return slot;
+	}
+
+	/**
+	 * Hands a slot back to be reused. The slot must not be used after this.
+	 * @param slot The slot from {@link #allocate()}
+	 */
+	public synchronized void release(int slot) {
+		if (freeCount == free.length) { free = Arrays.copyOf(free, free.length * 2); }
+		free[freeCount++] = slot;
+	}
+
+	/**
+	 * @param slot A slot from {@link #allocate()}
+	 * @return The page holding the slot's timers, at index {@code slot & PAGE_MASK}
+	 */
+	Page page(int slot) { return pages[slot >>> PAGE_BITS]; }
+
+	/**
+	 * Adds to all three timers of each slot given.
+	 * @param slots The slots to increment, only the first {@code count} are read
+	 * @param count How many slots to increment
+	 * @param amount The ticks to add
+	 */
+	public void incAll(int[] slots, int count, double amount) {
+		final Page[] pages = this.pages;
+		for (int n = 0; n < count; n++) {
+			int s = slots[n];
+			Page p = pages[s >>> PAGE_BITS];
+			int i = s & PAGE_MASK;
+			p.food[i] += amount;
+			p.heal[i] += amount;
+			p.slpt[i] += amount;
+		}
+	}
+}
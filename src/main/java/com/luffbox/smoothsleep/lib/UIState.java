@@ -0,0 +1,71 @@
+package com.luffbox.smoothsleep.lib;
+
+import com.luffbox.smoothsleep.lib.actionbar.ActionBarHelper;
+import com.luffbox.smoothsleep.lib.profiler.Send;
+import com.luffbox.smoothsleep.lib.profiler.TickProfiler;
+import org.bukkit.entity.Player;
+
+import java.util.Objects;
+
+/**
+ * Remembers the action bar and titles last sent to a player. Text is only
+ * sent again when it changes, or shortly before the client would stop
+ * showing it, instead of on every tick.
+ */
+public class UIState {
+
+	// The client shows an action bar message for 3 seconds before fading it out
+	private static final long ACTIONBAR_RESEND_MS = 2000L;
+	// How long before a title's stay time runs out to send it again
+	private static final long TITLE_RESEND_MARGIN_MS = 250L;
+
+	private String actionBar;
+	private long actionBarSent;
+	private String title, subtitle;
+	private long titleSent, titleStayMs;
+
+	public void sendActionBar(ActionBarHelper helper, Player plr, String text) {
+		long now = System.currentTimeMillis();
+		if (Objects.equals(actionBar, text) && now - actionBarSent < ACTIONBAR_RESEND_MS) return;
+		helper.sendActionBar(plr, text);
+		TickProfiler.count(Send.ACTION_BAR);
+		actionBar = text;
+		actionBarSent = now;
+	}
+
+	public void clearActionBar(ActionBarHelper helper, Player plr) {
+		if (actionBar == null) return;
+		helper.sendActionBar(plr, " ");
+		TickProfiler.count(Send.ACTION_BAR);
+		actionBar = null;
+	}
+
+	public void sendTitle(Player plr, String title, String subtitle, int stay, int fade) {
+		long now = System.currentTimeMillis();
+		if (Objects.equals(this.title, title) && Objects.equals(this.subtitle, subtitle)
+				&& now - titleSent < titleStayMs - TITLE_RESEND_MARGIN_MS) return;
+		plr.sendTitle(title, subtitle, 0, stay, fade);
+		TickProfiler.count(Send.TITLE);
+		this.title = title;
+		this.subtitle = subtitle;
+		titleSent = now;
+		titleStayMs = stay * 50L;
+	}
+
+	public void clearTitles(Player plr) {
+		if (title == null && subtitle == null) return;
+		plr.sendTitle(" ", " ", 0, 0, 0);
+		TickProfiler.count(Send.TITLE);
+		title = null;
+		subtitle = null;
+	}
+
+	/**
+	 * Forgets everything that was sent, so the next update will always be sent.
+	 */
+	public void reset() {
+		actionBar = null;
+		title = null;
+		subtitle = null;
+	}
+}
@@ -2,6 +2,8 @@ package com.luffbox.smoothsleep.lib.hooks;
 
 import com.luffbox.smoothsleep.SmoothSleep;
 import com.luffbox.smoothsleep.lib.MiscUtils;
+import com.luffbox.smoothsleep.lib.template.RenderContext;
+import com.luffbox.smoothsleep.lib.template.Template;
 import org.bukkit.World;
 import org.bukkit.entity.Player;
 
@@ -16,4 +18,14 @@ public class DefPlaceholderHelper implements PlaceholderHelper {
 	public String replace(String template, World w, Player p, int sc, int wc, double timescale, long ticksSlept, String nickname) {
 		return MiscUtils.sub(w, p, sc, wc, timescale, ticksSlept, nickname).replace(template);
 	}
+
+	@Override
+	public String replace(Template template, RenderContext ctx) { return template.render(ctx); }
+
+	@Override
+	public boolean isPlayerIndependent(Template template) { return template.isPlayerIndependent(); }
+
+	// Compiled templates only read from the render context
+	@Override
+	public boolean isThreadSafe() { return true; }
 }
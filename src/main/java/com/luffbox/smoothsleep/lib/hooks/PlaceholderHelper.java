@@ -1,5 +1,8 @@
 package com.luffbox.smoothsleep.lib.hooks;
 
+import com.luffbox.smoothsleep.lib.MiscUtils;
+import com.luffbox.smoothsleep.lib.template.RenderContext;
+import com.luffbox.smoothsleep.lib.template.Template;
 import org.bukkit.World;
 import org.bukkit.entity.Player;
 
@@ -7,4 +10,37 @@ public interface PlaceholderHelper {
 
 	String replace(String template, World w, Player p, int sc, int wc, double timescale, long ticksSlept, String nickname);
 
+	/**
+	 * Renders a compiled template, including color codes. Helpers that only implement
+	 * the String method will fall back to it using the template's source text.
+	 * @param template The compiled template
+	 * @param ctx The values to render with
+	 * @return The rendered, color translated String
+	 */
+	default String replace(Template template, RenderContext ctx) {
+		return MiscUtils.trans(replace(template.getSource(), ctx.getWorld(), ctx.getPlayer(), ctx.getSleepers(),
+				ctx.getWakers(), ctx.getTimescale(), ctx.getTicksSlept(), ctx.getNickname()));
+	}
+
+	/**
+	 * Whether this helper will render the template the same for every player in a World.
+	 * If true, SmoothSleep renders it once per World and sends the result to everyone.
+	 * Helpers that can't know (such as ones that pass text through other plugins)
+	 * should leave this as false.
+	 * @param template The compiled template
+	 * @return True if the rendered text doesn't depend on the player
+	 */
+	default boolean isPlayerIndependent(Template template) { return false; }
+
+	/**
+	 * Whether {@link #replace(Template, RenderContext)} can be called off the main thread.
+	 * If true, SmoothSleep may render on worker threads with a context that reads the
+	 * player's values from a {@link com.luffbox.smoothsleep.lib.template.PlayerSnapshot},
+	 * so the helper must not call into the player or other plugins. Helpers that pass
+	 * text through other plugins (such as PlaceholderAPI) should leave this as false,
+	 * in which case everything is rendered on the main thread.
+	 * @return True if rendering is safe from any thread
+	 */
+	default boolean isThreadSafe() { return false; }
+
 }
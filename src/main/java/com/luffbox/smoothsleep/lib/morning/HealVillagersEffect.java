@@ -0,0 +1,31 @@
+package com.luffbox.smoothsleep.lib.morning;
+
+import com.luffbox.smoothsleep.WorldData;
+import com.luffbox.smoothsleep.lib.ConfigHelper;
+import org.bukkit.Particle;
+import org.bukkit.attribute.Attribute;
+import org.bukkit.attribute.AttributeInstance;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Villager;
+
+/**
+ * Heals every villager to full health when 'heal-slept-villagers' is enabled.
+ */
+public class HealVillagersEffect implements MorningEffect {
+
+	@Override
+	public boolean isEnabled(WorldData wd) { return wd.getSettings().getBoolean(ConfigHelper.WorldSettingKey.HEAL_VILLAGERS); }
+
+	@Override
+	public boolean appliesTo(Entity entity) { return entity instanceof Villager; }
+
+	@Override
+	public void apply(Entity entity, WorldData wd) {
+		Villager v = (Villager) entity;
+		AttributeInstance attr = v.getAttribute(Attribute.GENERIC_MAX_HEALTH);
+		if (attr != null) {
+			v.setHealth(attr.getValue());
+			v.getWorld().spawnParticle(Particle.HEART, v.getLocation(), 1);
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package com.luffbox.smoothsleep.lib.morning;
+
+import com.luffbox.smoothsleep.WorldData;
+import org.bukkit.entity.Entity;
+
+/**
+ * Something done to entities in a World when the night ends, such as healing
+ * villagers. Effects are run a few chunks at a time over the ticks after
+ * morning instead of all at once.
+ * @see MorningEffects#register(MorningEffect)
+ */
+public interface MorningEffect {
+
+	/**
+	 * Called once when the night ends, before any entities are gathered.
+	 * @param wd The World the night ended in
+	 * @return True if this effect should run in the World this morning
+	 */
+	boolean isEnabled(WorldData wd);
+
+	/**
+	 * @param entity An entity in a loaded chunk of the World
+	 * @return True if {@link #apply} should be called for the entity
+	 */
+	boolean appliesTo(Entity entity);
+
+	/**
+	 * @param entity An entity this effect applies to
+	 * @param wd The World the night ended in
+	 */
+	void apply(Entity entity, WorldData wd);
+}
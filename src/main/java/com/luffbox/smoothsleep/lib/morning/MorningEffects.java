@@ -0,0 +1,126 @@
+package com.luffbox.smoothsleep.lib.morning;
+
+import com.luffbox.smoothsleep.SmoothSleep;
+import com.luffbox.smoothsleep.WorldData;
+import com.luffbox.smoothsleep.lib.ConfigHelper;
+import com.luffbox.smoothsleep.lib.Purgeable;
+import com.luffbox.smoothsleep.lib.scheduler.TaskHandle;
+import com.luffbox.smoothsleep.lib.scheduler.TaskScheduler;
+import com.luffbox.smoothsleep.tasks.MorningEffectsTask;
+import org.bukkit.Chunk;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+
+/**
+ * Runs the {@link MorningEffect}s when a night ends. The World's loaded chunks are
+ * queued and worked through a chunk at a time, for as long as each tick's
+ * 'morning-effects-budget-ms' allows, so a large World doesn't cause a spike at dawn.
+ * Other plugins can add their own effects with {@link #register(MorningEffect)}.
+ * <p>
+ * Each chunk is processed on the thread that owns it. On Folia that means the
+ * budget only covers handing chunks to their regions, which do the work in parallel.
+ */
+public class MorningEffects implements Purgeable {
+
+	private final SmoothSleep pl;
+	private final List<MorningEffect> effects = new ArrayList<>();
+	private final Queue<Job> jobs = new ArrayDeque<>();
+	private TaskHandle task;
+
+	public MorningEffects(SmoothSleep plugin) {
+		pl = plugin;
+		register(new HealVillagersEffect());
+	}
+
+	public void register(MorningEffect effect) { effects.add(Objects.requireNonNull(effect, "effect")); }
+	public boolean unregister(MorningEffect effect) { return effects.remove(effect); }
+
+	/**
+	 * Queues the morning effects for a World whose night just ended. Does nothing
+	 * if none of the effects are enabled in the World.
+	 * @param wd The World's data
+	 */
+	public void start(WorldData wd) {
+		List<MorningEffect> enabled = new ArrayList<>();
+		for (MorningEffect effect : effects) { if (effect.isEnabled(wd)) { enabled.add(effect); } }
+		if (enabled.isEmpty()) return;
+		jobs.add(new Job(wd, wd.getWorld().getLoadedChunks(), enabled));
+		if (task == null) { task = new MorningEffectsTask(this).runTimer(pl.scheduler, 1L, 1L); }
+	}
+
+	/**
+	 * Works through queued chunks until the tick's time budget is used up. At least
+	 * one chunk is always processed, so the effects finish even with a tiny budget.
+	 */
+	public void tick() {
+		long budget = (long) (pl.data.config.getDouble(ConfigHelper.GlobalSettingKey.MORNING_EFFECTS_BUDGET_MS) * 1_000_000L);
+		long start = System.nanoTime();
+		do {
+			Job job = jobs.peek();
+			if (job == null) break;
+			if (!job.next(pl.scheduler)) jobs.poll();
+		} while (System.nanoTime() - start < budget);
+		if (jobs.isEmpty()) { stop(); }
+	}
+
+	private void stop() {
+		if (task != null) { task.cancel(); }
+		task = null;
+	}
+
+	@Override
+	public void purgeData() {
+		stop();
+		jobs.clear();
+	}
+
+	private static class Job {
+		private final WorldData wd;
+		private final World w;
+		private final int[] chunkX, chunkZ;
+		private final List<MorningEffect> effects;
+		private int next = 0;
+
+		// Only the coordinates are kept, the chunk is looked up again on the thread that owns it
+		private Job(WorldData wd, Chunk[] chunks, List<MorningEffect> effects) {
+			this.wd = wd;
+			this.w = wd.getWorld();
+			this.effects = effects;
+			chunkX = new int[chunks.length];
+			chunkZ = new int[chunks.length];
+			for (int i = 0; i < chunks.length; i++) {
+				chunkX[i] = chunks[i].getX();
+				chunkZ[i] = chunks[i].getZ();
+			}
+		}
+
+		/**
+		 * Runs the effects on the entities in the next chunk.
+		 * @return False once every chunk has been processed
+		 */
+		private boolean next(TaskScheduler scheduler) {
+			if (next >= chunkX.length) return false;
+			final int x = chunkX[next], z = chunkZ[next];
+			next++;
+			scheduler.runAt(w, x, z, () -> process(x, z));
+			return next < chunkX.length;
+		}
+
+		private void process(int x, int z) {
+			if (!w.isChunkLoaded(x, z)) return;
+			for (Entity entity : w.getChunkAt(x, z).getEntities()) {
+				if (!entity.isValid()) continue;
+				for (int i = 0; i < effects.size(); i++) {
+					MorningEffect effect = effects.get(i);
+					if (effect.appliesTo(entity)) { effect.apply(entity, wd); }
+				}
+			}
+		}
+	}
+}
@@ -1,20 +1,23 @@
 package com.luffbox.smoothsleep.lib.particle;
 
-import org.bukkit.Location;
-import org.bukkit.Particle;
-
 public class CirclePattern implements ParticlePattern {
+
+	@Override
+	public int getPoints() { return 10; }
+
 	@Override
-	public void spawnParticle(Particle type, Location ref, double radius, double progress) {
-		int amount = 10;
-		double inc = (2 * Math.PI) / amount;
-		for (int i = 0; i < amount; i++) {
-			double a = inc * i + progress * 2;
-			ref.getWorld().spawnParticle(type,
-					ref.getX() + (radius * Math.cos(a)),
-					ref.getY() + 0.1,
-					ref.getZ() + (radius * Math.sin(a)),
-					1);
+	public ParticleMesh createMesh(double radius, int points) {
+		double[] x = new double[points], y = new double[points], z = new double[points];
+		double inc = (2 * Math.PI) / points;
+		for (int i = 0; i < points; i++) {
+			double a = inc * i;
+			x[i] = radius * Math.cos(a);
+			y[i] = 0.1;
+			z[i] = radius * Math.sin(a);
 		}
+		return new ParticleMesh(x, y, z, points);
 	}
+
+	@Override
+	public boolean spins() { return true; }
 }
@@ -0,0 +1,29 @@
+package com.luffbox.smoothsleep.lib.particle;
+
+import com.destroystokyo.paper.ParticleBuilder;
+import org.bukkit.Particle;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.util.List;
+
+/**
+ * Sends particles with Paper's {@link ParticleBuilder}, which builds the packet
+ * once and sends it to every receiver.
+ */
+public class PaperParticleEmitter extends ParticleEmitter {
+
+	private ParticleBuilder builder;
+
+	@Override
+	protected void send(Particle type, World w, List<Player> receivers, double x, double y, double z,
+						int count, double ox, double oy, double oz) {
+		if (builder == null) { builder = new ParticleBuilder(type); }
+		builder.particle(type)
+				.location(w, x, y, z)
+				.receivers(receivers)
+				.count(count)
+				.offset(ox, oy, oz)
+				.spawn();
+	}
+}
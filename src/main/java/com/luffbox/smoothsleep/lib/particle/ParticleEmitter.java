@@ -0,0 +1,129 @@
+package com.luffbox.smoothsleep.lib.particle;
+
+import com.luffbox.smoothsleep.lib.LoggablePlugin;
+import com.luffbox.smoothsleep.lib.profiler.Send;
+import com.luffbox.smoothsleep.lib.profiler.TickProfiler;
+import org.bukkit.Particle;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sends particles from a {@link ParticleMesh} to a fixed list of viewers instead of
+ * broadcasting them to everyone near the World location. Within a tick, a particle
+ * a viewer has already been sent at the same spot isn't sent to them again, so
+ * players waking up next to each other don't double up. Counts what it sends so
+ * the engine can keep to its budget.
+ * @see #create()
+ */
+public abstract class ParticleEmitter {
+
+	// Particles closer together than this are treated as the same spot
+	private static final double SAME_SPOT = 1.0 / 16.0;
+
+	private final Map<Player, Set<Long>> seen = new HashMap<>();
+	private final List<Player> receivers = new ArrayList<>();
+	private final boolean counted;
+	private Particle type;
+	private World w;
+	private List<Player> viewers;
+	private int sent;
+
+	protected ParticleEmitter() { this(true); }
+
+	// Emitters that don't really send anything keep out of the profiler's send counts
+	ParticleEmitter(boolean counted) { this.counted = counted; }
+
+	/**
+	 * @return The cheapest emitter for the server, using Paper's ParticleBuilder if it's available
+	 */
+	public static ParticleEmitter create() {
+		switch (LoggablePlugin.serverType) {
+			case PAPER:
+			case PURPUR:
+				return new PaperParticleEmitter();
+			default:
+				return new PlayerParticleEmitter();
+		}
+	}
+
+	/**
+	 * Sends one particle packet to the receivers.
+	 * @param type The particle
+	 * @param w The World the receivers are in
+	 * @param receivers Who to send it to, never empty
+	 * @param x The X of the particle, or the center of the spread
+	 * @param y The Y of the particle, or the center of the spread
+	 * @param z The Z of the particle, or the center of the spread
+	 * @param count How many particles the client should spawn
+	 * @param ox The spread on the X axis, 0 for a single point
+	 * @param oy The spread on the Y axis, 0 for a single point
+	 * @param oz The spread on the Z axis, 0 for a single point
+	 */
+	protected abstract void send(Particle type, World w, List<Player> receivers, double x, double y, double z,
+								 int count, double ox, double oy, double oz);
+
+	void reset(Particle type, World w, List<Player> viewers) {
+		this.type = type;
+		this.w = w;
+		this.viewers = viewers;
+	}
+
+	/**
+	 * Spawns a single particle at a point.
+	 */
+	public void spawn(double x, double y, double z) { spread(x, y, z, 1, 0, 0, 0); }
+
+	/**
+	 * Spawns several particles scattered around a point, which the client works
+	 * out itself from a single packet. Good for patterns where the exact points
+	 * don't matter.
+	 * @param count How many particles to spawn
+	 * @param ox How far they spread on the X axis
+	 * @param oy How far they spread on the Y axis
+	 * @param oz How far they spread on the Z axis
+	 */
+	public void spread(double x, double y, double z, int count, double ox, double oy, double oz) {
+		long spot = spot(x, y, z, count);
+		receivers.clear();
+		for (int i = 0; i < viewers.size(); i++) {
+			Player viewer = viewers.get(i);
+			if (seen.computeIfAbsent(viewer, v -> new HashSet<>()).add(spot)) { receivers.add(viewer); }
+		}
+		if (receivers.isEmpty()) return;
+		send(type, w, receivers, x, y, z, count, ox, oy, oz);
+		sent += count * receivers.size();
+		if (counted) TickProfiler.count(Send.PARTICLE, receivers.size());
+	}
+
+	/**
+	 * @return Particles sent to all viewers combined since the engine last reset the count
+	 */
+	int getSent() { return sent; }
+
+	/**
+	 * Starts a new tick, so particles are sent again even if they were sent last tick.
+	 */
+	void newTick() {
+		sent = 0;
+		for (Set<Long> spots : seen.values()) { spots.clear(); }
+	}
+
+	/**
+	 * Forgets every viewer, for when there's nothing left to spawn.
+	 */
+	void clear() { seen.clear(); }
+
+	// Packs the particle type, rounded position and count into one key
+	private long spot(double x, double y, double z, int count) {
+		long qx = Math.round(x / SAME_SPOT) & 0xFFFFF, qy = Math.round(y / SAME_SPOT) & 0xFFF, qz = Math.round(z / SAME_SPOT) & 0xFFFFF;
+		long key = (qx << 44) | (qy << 32) | (qz << 12);
+		return key ^ (type.ordinal() * 31L + count);
+	}
+}
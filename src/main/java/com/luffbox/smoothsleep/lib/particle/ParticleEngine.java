@@ -0,0 +1,230 @@
+package com.luffbox.smoothsleep.lib.particle;
+
+import com.luffbox.smoothsleep.SmoothSleep;
+import com.luffbox.smoothsleep.lib.ConfigHelper;
+import com.luffbox.smoothsleep.lib.Purgeable;
+import com.luffbox.smoothsleep.lib.profiler.Phase;
+import com.luffbox.smoothsleep.lib.profiler.TickProfiler;
+import com.luffbox.smoothsleep.lib.scheduler.PluginRunnable;
+import com.luffbox.smoothsleep.lib.scheduler.TaskHandle;
+import com.luffbox.smoothsleep.tasks.ParticleTask;
+import org.bukkit.Location;
+import org.bukkit.Particle;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.luffbox.smoothsleep.lib.ConfigHelper.WorldSettingKey.*;
+
+/**
+ * Spawns the morning particles for every player from a single repeating task.
+ * Each emission's settings are read once when it's queued, and the task only
+ * runs while there's something to spawn.
+ * <p>
+ * Particles are only sent to players within the World's particle view distance,
+ * and the total sent each tick is kept under 'particle-budget-per-tick'. When
+ * a lot of players wake at once, every pattern is drawn with fewer points so
+ * the whole morning still fits in the budget.
+ * <p>
+ * On Folia the players near an emission may be ticked by other threads, so each
+ * emission runs on its own player's thread instead, finds viewers among the
+ * entities around the player, and keeps to the budget on its own.
+ * @see ParticleTask
+ */
+public class ParticleEngine implements Purgeable {
+
+	// Ticks between waking up and the first particles, same as the old per-player task
+	private static final int START_DELAY = 5;
+
+	private final SmoothSleep pl;
+	private final List<Emission> active = new ArrayList<>();
+	private final List<Emission> due = new ArrayList<>();
+	private final ParticleEmitter emitter = ParticleEmitter.create();
+	private final Location viewerLoc = new Location(null, 0, 0, 0);
+	private final Set<Solo> solos = ConcurrentHashMap.newKeySet();
+	private TaskHandle task;
+
+	public ParticleEngine(SmoothSleep plugin) { pl = plugin; }
+
+	/**
+	 * Queues the morning particles for a player, using their World's settings.
+	 * Does nothing if particles are disabled in the World, or the plugin is.
+	 * @param plr The player to spawn particles around
+	 * @param ws The settings of the player's World
+	 */
+	public void emit(Player plr, ConfigHelper.WorldSettings ws) {
+		if (!pl.isEnabled() || ws == null || !ws.getBoolean(PARTICLE_ENABLED)) return;
+		ParticlePattern patt = ws.getPattern(PARTICLE_PATTERN);
+		Particle type = ws.getParticle(PARTICLE_TYPE);
+		int target = ws.getInt(PARTICLE_AMOUNT);
+		if (patt == null || type == null || target <= 0) return;
+		double view = ws.getDouble(PARTICLE_VIEW_DISTANCE);
+		Emission e = new Emission(plr, type, patt, ws.getDouble(PARTICLE_RADIUS), target,
+				Math.max(1, ws.getInt(PARTICLE_DELAY)), view);
+		if (pl.scheduler.isRegionized()) {
+			solos.removeIf(PluginRunnable::isCancelled); // Players who left take their task with them
+			Solo solo = new Solo(e);
+			solos.add(solo);
+			solo.runTimerFor(pl.scheduler, plr, 1L, 1L);
+			return;
+		}
+		active.add(e);
+		if (task == null) { task = new ParticleTask(this).runTimer(pl.scheduler, 1L, 1L); }
+	}
+
+	/**
+	 * Spawns the particles due this tick, drops finished emissions and stops
+	 * the task once there are none left.
+	 */
+	public void tick() {
+		long start = TickProfiler.start();
+		int budget = pl.data.config.getInt(ConfigHelper.GlobalSettingKey.PARTICLE_BUDGET);
+		long cost = 0;
+		int kept = 0;
+		for (int i = 0; i < active.size(); i++) {
+			Emission e = active.get(i);
+			if (!e.isAlive()) continue;
+			active.set(kept++, e);
+			if (!e.isDue()) continue;
+			findViewers(e);
+			if (e.viewers.isEmpty()) { e.complete++; continue; } // Nobody close enough to see it
+			due.add(e);
+			cost += (long) e.patt.getPoints() * e.viewers.size();
+		}
+		active.subList(kept, active.size()).clear();
+
+		// Scale every pattern down by the same amount if the full detail won't fit
+		double detail = budget <= 0 || cost <= budget ? 1.0 : budget / (double) cost;
+		emitter.newTick();
+		for (int i = 0; i < due.size(); i++) {
+			Emission e = due.get(i);
+			int points = Math.max(1, (int) (e.patt.getPoints() * detail));
+			if (budget > 0 && emitter.getSent() + points * e.viewers.size() > budget) {
+				e.complete++; // Out of budget, skip this step rather than fall behind
+			} else {
+				e.spawn(emitter, points);
+			}
+			e.viewers.clear();
+		}
+		due.clear();
+		if (active.isEmpty()) { stop(); }
+		TickProfiler.stop(Phase.PARTICLES, null, start);
+	}
+
+	private void findViewers(Emission e) {
+		for (Player viewer : e.w.getPlayers()) {
+			if (viewer.getLocation(viewerLoc).distanceSquared(e.ref) <= e.viewDistSq) { e.viewers.add(viewer); }
+		}
+	}
+
+	private void stop() {
+		if (task != null) { task.cancel(); }
+		task = null;
+		emitter.clear();
+	}
+
+	@Override
+	public void purgeData() {
+		stop();
+		active.clear();
+		solos.forEach(Solo::cancel);
+		solos.clear();
+	}
+
+	// A single emission run by the thread that owns its player
+	private class Solo extends PluginRunnable {
+		private final Emission e;
+		private final ParticleEmitter emitter = ParticleEmitter.create();
+
+		private Solo(Emission emission) { e = emission; }
+
+		@Override
+		public void run() {
+			if (!e.isAlive()) {
+				cancel();
+				solos.remove(this);
+				return;
+			}
+			if (!e.isDue()) return;
+			long start = TickProfiler.start();
+			for (Entity ent : e.plr.getNearbyEntities(e.viewDist, e.viewDist, e.viewDist)) {
+				if (ent instanceof Player && ent.getLocation(e.viewerLoc).distanceSquared(e.ref) <= e.viewDistSq) {
+					e.viewers.add((Player) ent);
+				}
+			}
+			e.viewers.add(e.plr); // Not one of their own nearby entities
+			int budget = pl.data.config.getInt(ConfigHelper.GlobalSettingKey.PARTICLE_BUDGET);
+			long cost = (long) e.patt.getPoints() * e.viewers.size();
+			double detail = budget <= 0 || cost <= budget ? 1.0 : budget / (double) cost;
+			emitter.newTick();
+			e.spawn(emitter, Math.max(1, (int) (e.patt.getPoints() * detail)));
+			e.viewers.clear();
+			TickProfiler.stop(Phase.PARTICLES, e.w, start);
+		}
+	}
+
+	private static class Emission {
+		private final Player plr;
+		private final World w;
+		private final Particle type;
+		private final ParticlePattern patt;
+		private final double radius, viewDist, viewDistSq;
+		private final int target, delay;
+		private final Location ref = new Location(null, 0, 0, 0);
+		private final Location viewerLoc = new Location(null, 0, 0, 0); // Only used when running solo
+		private final List<Player> viewers = new ArrayList<>();
+		private ParticleMesh mesh;
+		private int meshPoints;
+		private int complete = 0, wait = START_DELAY;
+
+		private Emission(Player plr, Particle type, ParticlePattern patt, double radius, int target, int delay, double viewDist) {
+			this.plr = plr;
+			this.w = plr.getWorld();
+			this.type = type;
+			this.patt = patt;
+			this.radius = radius;
+			this.target = target;
+			this.delay = delay;
+			this.viewDist = viewDist;
+			this.viewDistSq = viewDist * viewDist;
+		}
+
+		/**
+		 * @return False once the emission is finished or can't continue
+		 */
+		private boolean isAlive() {
+			// The settings were for the World the player woke up in
+			return complete < target && plr.isOnline() && plr.getWorld() == w;
+		}
+
+		/**
+		 * Counts down to the next step, and if it's this tick, records where the player is.
+		 * @return True if a step should be spawned this tick
+		 */
+		private boolean isDue() {
+			if (--wait > 0) return false;
+			wait = delay;
+			plr.getLocation(ref);
+			return true;
+		}
+
+		private void spawn(ParticleEmitter out, int points) {
+			// Points only change when the detail does, so the last mesh is usually the right one
+			if (mesh == null || meshPoints != points) {
+				mesh = ParticlePatterns.mesh(patt, radius, points);
+				meshPoints = points;
+			}
+			double angle = patt.spins() ? (double) complete / (double) target * 2 : 0;
+			int frame = mesh.getFrames() > 1 ? ThreadLocalRandom.current().nextInt(mesh.getFrames()) : 0;
+			out.reset(type, w, viewers);
+			mesh.spawn(out, ref.getX(), ref.getY(), ref.getZ(), angle, frame);
+			complete++;
+		}
+	}
+}
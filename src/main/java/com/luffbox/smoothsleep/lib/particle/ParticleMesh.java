@@ -0,0 +1,90 @@
+package com.luffbox.smoothsleep.lib.particle;
+
+/**
+ * The points of a {@link ParticlePattern}, worked out once and kept as offsets
+ * from the pattern's center. Spawning a mesh is one add per coordinate, plus a
+ * rotation around the Y axis for patterns that spin.
+ * <p>
+ * A mesh can hold several frames of the same size. Patterns that shouldn't look
+ * the same every step use them to vary each step without working out new points.
+ * <p>
+ * Patterns where the exact points don't matter, like {@link RandomPattern}, can
+ * use a {@link #spread} mesh instead, which leaves the client to scatter the
+ * particles and sends one packet per step instead of one per particle.
+ * @see ParticlePatterns#mesh(ParticlePattern, double, int)
+ */
+public final class ParticleMesh {
+
+	private final double[] x, y, z;
+	private final int frameSize, frames;
+	private final boolean spread;
+
+	/**
+	 * @param x The X offset of each point
+	 * @param y The Y offset of each point
+	 * @param z The Z offset of each point
+	 * @param frameSize How many points each frame has. The arrays must hold a whole number of frames.
+	 */
+	public ParticleMesh(double[] x, double[] y, double[] z, int frameSize) {
+		if (x.length != y.length || x.length != z.length) throw new IllegalArgumentException("Coordinate arrays must be the same length");
+		if (frameSize <= 0 || x.length % frameSize != 0) throw new IllegalArgumentException("Points must be a whole number of frames");
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		this.frameSize = frameSize;
+		frames = x.length / frameSize;
+		spread = false;
+	}
+
+	private ParticleMesh(double cx, double cy, double cz, double ox, double oy, double oz, int count) {
+		x = new double[] { cx, ox };
+		y = new double[] { cy, oy };
+		z = new double[] { cz, oz };
+		frameSize = count;
+		frames = 1;
+		spread = true;
+	}
+
+	/**
+	 * Makes a mesh that has the client scatter the particles around a center point.
+	 * @param cx The X offset of the center
+	 * @param cy The Y offset of the center
+	 * @param cz The Z offset of the center
+	 * @param ox How far the particles spread on the X axis
+	 * @param oy How far the particles spread on the Y axis
+	 * @param oz How far the particles spread on the Z axis
+	 * @param count How many particles each step spawns
+	 * @return The mesh
+	 */
+	public static ParticleMesh spread(double cx, double cy, double cz, double ox, double oy, double oz, int count) {
+		return new ParticleMesh(cx, cy, cz, ox, oy, oz, count);
+	}
+
+	public int getFrames() { return frames; }
+	public int getFrameSize() { return frameSize; }
+
+	/**
+	 * Spawns one frame of the mesh.
+	 * @param out Where to send the particles
+	 * @param ox The X of the center
+	 * @param oy The Y of the center
+	 * @param oz The Z of the center
+	 * @param angle Radians to rotate the mesh around the Y axis
+	 * @param frame Which frame to spawn, from 0 to {@link #getFrames()} - 1
+	 */
+	public void spawn(ParticleEmitter out, double ox, double oy, double oz, double angle, int frame) {
+		if (spread) {
+			out.spread(ox + x[0], oy + y[0], oz + z[0], frameSize, x[1], y[1], z[1]);
+			return;
+		}
+		int start = frame * frameSize, end = start + frameSize;
+		if (angle == 0) {
+			for (int i = start; i < end; i++) { out.spawn(ox + x[i], oy + y[i], oz + z[i]); }
+			return;
+		}
+		double cos = Math.cos(angle), sin = Math.sin(angle);
+		for (int i = start; i < end; i++) {
+			out.spawn(ox + (x[i] * cos - z[i] * sin), oy + y[i], oz + (x[i] * sin + z[i] * cos));
+		}
+	}
+}
@@ -1,8 +1,30 @@
 package com.luffbox.smoothsleep.lib.particle;
 
-import org.bukkit.Location;
-import org.bukkit.Particle;
-
+/**
+ * A shape the morning particles can be drawn in. Patterns only describe their
+ * points; the points are worked out once per radius and point count, cached, and
+ * reused for every step of every emission.
+ * @see ParticlePatterns#register(String, ParticlePattern)
+ */
 public interface ParticlePattern {
-	void spawnParticle(Particle type, Location ref, double radius, double progress);
+
+	/**
+	 * @return How many particles one step of this pattern spawns at full detail
+	 */
+	int getPoints();
+
+	/**
+	 * Works out the pattern's points around 0, 0, 0. When particles are being cut
+	 * back this is asked for fewer points than {@link #getPoints()}, which should
+	 * be spread over the same shape.
+	 * @param radius The pattern radius
+	 * @param points How many particles each step spawns, at least 1
+	 * @return The mesh, with one or more frames of {@code points} points
+	 */
+	ParticleMesh createMesh(double radius, int points);
+
+	/**
+	 * @return True if the mesh should turn around the Y axis as the emission progresses
+	 */
+	default boolean spins() { return false; }
 }
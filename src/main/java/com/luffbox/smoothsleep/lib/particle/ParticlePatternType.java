@@ -1,5 +0,0 @@
-package com.luffbox.smoothsleep.lib.particle;
-
-public enum ParticlePatternType {
-	RANDOM, CIRCLE, SPIRAL
-}
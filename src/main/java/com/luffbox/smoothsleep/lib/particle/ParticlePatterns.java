@@ -0,0 +1,107 @@
+package com.luffbox.smoothsleep.lib.particle;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Every particle pattern that can be named in the config, and the meshes made
+ * from them. Other plugins can add their own patterns with {@link #register},
+ * after which worlds can use them by name in 'morning-particle-options.pattern'.
+ * <p>
+ * Meshes are looked up from every thread spawning particles on Folia, and
+ * patterns can be registered at any time, so both are safe to use from any thread.
+ * Registering copies the list of patterns, as it hardly ever changes.
+ */
+public final class ParticlePatterns {
+
+	private static volatile Map<String, ParticlePattern> patterns = Collections.emptyMap(); // Linked to list in order
+	private static final Map<MeshKey, ParticleMesh> meshes = new ConcurrentHashMap<>();
+
+	static {
+		register("RANDOM", new RandomPattern());
+		register("CIRCLE", new CirclePattern());
+		register("SPIRAL", new SpiralPattern());
+	}
+
+	private ParticlePatterns() {}
+
+	/**
+	 * Adds a pattern, replacing any pattern already registered under the name.
+	 * @param name The name used in the config, not case sensitive
+	 * @param pattern The pattern
+	 */
+	public static synchronized void register(String name, ParticlePattern pattern) {
+		Objects.requireNonNull(pattern, "pattern");
+		Map<String, ParticlePattern> copy = new LinkedHashMap<>(patterns);
+		ParticlePattern old = copy.put(key(name), pattern);
+		patterns = Collections.unmodifiableMap(copy);
+		if (old != null) forget(old);
+	}
+
+	/**
+	 * @param name The name the pattern was registered with
+	 * @return True if a pattern was removed
+	 */
+	public static synchronized boolean unregister(String name) {
+		Map<String, ParticlePattern> copy = new LinkedHashMap<>(patterns);
+		ParticlePattern old = copy.remove(key(name));
+		if (old == null) return false;
+		patterns = Collections.unmodifiableMap(copy);
+		forget(old);
+		return true;
+	}
+
+	/**
+	 * @param name A pattern name, not case sensitive
+	 * @return The pattern, or null if none is registered with the name
+	 */
+	public static ParticlePattern get(String name) { return name == null ? null : patterns.get(key(name)); }
+
+	/**
+	 * @return The names of the patterns registered right now
+	 */
+	public static Set<String> names() { return patterns.keySet(); }
+
+	/**
+	 * Gets the mesh for a pattern at a radius and point count, making it the first
+	 * time it's asked for.
+	 * @param pattern The pattern
+	 * @param radius The pattern radius
+	 * @param points How many points each step spawns
+	 * @return The cached mesh
+	 */
+	public static ParticleMesh mesh(ParticlePattern pattern, double radius, int points) {
+		return meshes.computeIfAbsent(new MeshKey(pattern, radius, points), k -> pattern.createMesh(radius, points));
+	}
+
+	private static void forget(ParticlePattern pattern) { meshes.keySet().removeIf(k -> k.pattern == pattern); }
+
+	private static String key(String name) { return name.toUpperCase(Locale.ENGLISH); }
+
+	private static final class MeshKey {
+		private final ParticlePattern pattern;
+		private final double radius;
+		private final int points;
+
+		private MeshKey(ParticlePattern pattern, double radius, int points) {
+			this.pattern = pattern;
+			this.radius = radius;
+			this.points = points;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof MeshKey)) return false;
+			MeshKey k = (MeshKey) o;
+			return pattern == k.pattern && Double.compare(radius, k.radius) == 0 && points == k.points;
+		}
+
+		@Override
+		public int hashCode() { return (System.identityHashCode(pattern) * 31 + Double.hashCode(radius)) * 31 + points; }
+	}
+}
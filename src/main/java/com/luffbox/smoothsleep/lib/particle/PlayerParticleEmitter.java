@@ -0,0 +1,20 @@
+package com.luffbox.smoothsleep.lib.particle;
+
+import org.bukkit.Particle;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.util.List;
+
+/**
+ * Sends particles with {@link Player#spawnParticle}, which builds the packet again for each receiver.
+ */
+public class PlayerParticleEmitter extends ParticleEmitter {
+	@Override
+	protected void send(Particle type, World w, List<Player> receivers, double x, double y, double z,
+						int count, double ox, double oy, double oz) {
+		for (int i = 0; i < receivers.size(); i++) {
+			receivers.get(i).spawnParticle(type, x, y, z, count, ox, oy, oz);
+		}
+	}
+}
@@ -1,25 +1,26 @@
 package com.luffbox.smoothsleep.lib.particle;
 
-import org.bukkit.Location;
-import org.bukkit.Particle;
-
 public class SpiralPattern implements ParticlePattern {
+
+	@Override
+	public int getPoints() { return 40; }
+
 	@Override
-	public void spawnParticle(Particle type, Location ref, double radius, double progress) {
-		int amount = 20;
+	public ParticleMesh createMesh(double radius, int points) {
+		int amount = Math.max(1, points / 2); // Two arms, one particle each per step
+		double[] x = new double[amount * 2], y = new double[amount * 2], z = new double[amount * 2];
 		double inc = (2 * Math.PI) / amount;
 		for (int i = 0; i < amount; i++) {
-			double a = inc * i + progress * 2;
-			ref.getWorld().spawnParticle(type,
-					ref.getX() + (radius * Math.cos(a)),
-					ref.getY() + (2.0 / amount * i),
-					ref.getZ() + (radius * Math.sin(a)),
-					1);
-			ref.getWorld().spawnParticle(type,
-					ref.getX() + (-radius * Math.cos(a)),
-					ref.getY() + (2.0 / amount * i),
-					ref.getZ() + (-radius * Math.sin(a)),
-					1);
+			double a = inc * i;
+			x[i * 2] = radius * Math.cos(a);
+			z[i * 2] = radius * Math.sin(a);
+			x[i * 2 + 1] = -x[i * 2];
+			z[i * 2 + 1] = -z[i * 2];
+			y[i * 2] = y[i * 2 + 1] = 2.0 / amount * i;
 		}
+		return new ParticleMesh(x, y, z, amount * 2);
 	}
+
+	@Override
+	public boolean spins() { return true; }
 }
@@ -0,0 +1,76 @@
+package com.luffbox.smoothsleep.lib.profiler;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts durations in fixed buckets, so recording never allocates and percentiles
+ * can be read at any time. Every power of two is split into 4 buckets, which keeps
+ * a percentile within about 20% of the real value. Safe to record from any thread.
+ */
+public class Histogram {
+
+	private static final int SUB_BITS = 2;
+	private static final int SUB = 1 << SUB_BITS;
+	private static final int BUCKETS = (64 - SUB_BITS) * SUB; // Enough for any positive long
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder total = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	public void record(long nanos) {
+		if (nanos < 0) nanos = 0;
+		counts.incrementAndGet(bucket(nanos));
+		count.increment();
+		total.add(nanos);
+		long m = max.get();
+		while (nanos > m && !max.compareAndSet(m, nanos)) { m = max.get(); }
+	}
+
+	public long getCount() { return count.sum(); }
+	public long getTotal() { return total.sum(); }
+	public long getMax() { return max.get(); }
+	public long getMean() {
+		long n = getCount();
+		return n == 0 ? 0 : getTotal() / n;
+	}
+
+	/**
+	 * @param p The percentile, between 0 and 1
+	 * @return The upper bound of the bucket the percentile falls in, in nanoseconds
+	 */
+	public long percentile(double p) {
+		long n = getCount();
+		if (n == 0) return 0;
+		long target = Math.max(1, (long) Math.ceil(p * n));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= target) return Math.min(upperBound(i), getMax());
+		}
+		return getMax();
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) { counts.set(i, 0); }
+		count.reset();
+		total.reset();
+		max.set(0);
+	}
+
+	static int bucket(long nanos) {
+		if (nanos < SUB) return (int) nanos;
+		int exp = 63 - Long.numberOfLeadingZeros(nanos);
+		int sub = (int) (nanos >>> (exp - SUB_BITS)) & (SUB - 1);
+		return (exp - SUB_BITS + 1) * SUB + sub;
+	}
+
+	static long upperBound(int bucket) {
+		if (bucket < SUB) return bucket;
+		int exp = bucket / SUB + SUB_BITS - 1;
+		int sub = bucket % SUB;
+		return ((long) (SUB + sub + 1) << (exp - SUB_BITS)) - 1;
+	}
+}
@@ -0,0 +1,20 @@
+package com.luffbox.smoothsleep.lib.profiler;
+
+/**
+ * The parts of SmoothSleep that the {@link TickProfiler} times.
+ */
+public enum Phase {
+	SLEEP_TICK("sleep-tick"),
+	TIMESTEP("timestep"),
+	TIMESTEP_TIMERS("timestep-timers"),
+	NIGHT_BOUNDARY("night-boundary"),
+	UPDATE_UI("update-ui"),
+	RENDER("render"),
+	VITALS("vitals"),
+	WAKE("wake"),
+	PARTICLES("particles"),
+	;
+
+	public final String id;
+	Phase(String id) { this.id = id; }
+}
@@ -0,0 +1,15 @@
+package com.luffbox.smoothsleep.lib.profiler;
+
+/**
+ * The kinds of UI updates sent to players that the {@link TickProfiler} counts.
+ */
+public enum Send {
+	ACTION_BAR("action-bar"),
+	TITLE("title"),
+	BOSS_BAR("boss-bar"),
+	PARTICLE("particle"),
+	;
+
+	public final String id;
+	Send(String id) { this.id = id; }
+}
@@ -0,0 +1,139 @@
+package com.luffbox.smoothsleep.lib.profiler;
+
+import org.bukkit.World;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Times SmoothSleep's hot paths and counts the UI updates it sends, for the
+ * /ssdebug command. It's off until turned on, and while off, timing a phase is
+ * a single field read:
+ * <pre>
+ * long start = TickProfiler.start();
+ * ...
+ * TickProfiler.stop(Phase.TIMESTEP, w, start);
+ * </pre>
+ */
+public final class TickProfiler {
+
+	// Phases that don't belong to a World are recorded under this name
+	public static final String GLOBAL = "*";
+
+	private static volatile boolean enabled = false;
+	private static volatile long enabledAt = 0L;
+	private static final Map<String, Histogram[]> worlds = new ConcurrentHashMap<>();
+	private static final LongAdder[] sends = new LongAdder[Send.values().length];
+
+	static {
+		for (int i = 0; i < sends.length; i++) { sends[i] = new LongAdder(); }
+	}
+
+	private TickProfiler() {}
+
+	public static boolean isEnabled() { return enabled; }
+
+	public static void setEnabled(boolean enable) {
+		if (enable && !enabled) { enabledAt = System.currentTimeMillis(); }
+		enabled = enable;
+	}
+
+	/**
+	 * @return The time to pass to {@link #stop}, or 0 if the profiler is off
+	 */
+	public static long start() { return enabled ? System.nanoTime() : 0L; }
+
+	/**
+	 * Records the time since {@link #start()}. Does nothing if the profiler was off at the start.
+	 * If the World isn't already at hand, check that start isn't 0 before looking it up.
+	 * @param phase The phase being timed
+	 * @param w The World the work was for, or null if it isn't for one
+	 * @param start The value returned by {@link #start()}
+	 */
+	public static void stop(Phase phase, World w, long start) {
+		if (start == 0L) return;
+		record(phase, w == null ? GLOBAL : w.getName(), System.nanoTime() - start);
+	}
+
+	public static void record(Phase phase, String world, long nanos) {
+		worlds.computeIfAbsent(world, k -> newPhases())[phase.ordinal()].record(nanos);
+	}
+
+	public static void count(Send type) { if (enabled) sends[type.ordinal()].increment(); }
+	public static void count(Send type, int amount) { if (enabled) sends[type.ordinal()].add(amount); }
+
+	public static long getSent(Send type) { return sends[type.ordinal()].sum(); }
+
+	/**
+	 * @return The phases of each World that has had anything recorded, sorted by World name
+	 */
+	public static Map<String, Histogram[]> getWorlds() { return new TreeMap<>(worlds); }
+
+	/**
+	 * @return When the profiler was last turned on, in epoch millis, or 0 if it never was
+	 */
+	public static long getEnabledAt() { return enabledAt; }
+
+	public static void reset() {
+		worlds.clear();
+		for (LongAdder sent : sends) { sent.reset(); }
+		if (enabled) { enabledAt = System.currentTimeMillis(); }
+	}
+
+	/**
+	 * @return Everything recorded, as JSON. Times are in nanoseconds.
+	 */
+	public static String toJson() {
+		StringBuilder sb = new StringBuilder(1024);
+		sb.append("{\n  \"enabled\": ").append(enabled);
+		sb.append(",\n  \"since\": ").append(enabledAt);
+		sb.append(",\n  \"sends\": {");
+		for (Send type : Send.values()) {
+			sb.append(type.ordinal() == 0 ? "\n" : ",\n");
+			sb.append("    \"").append(type.id).append("\": ").append(getSent(type));
+		}
+		sb.append("\n  },\n  \"worlds\": {");
+		boolean firstWorld = true;
+		for (Map.Entry<String, Histogram[]> entry : getWorlds().entrySet()) {
+			sb.append(firstWorld ? "\n" : ",\n");
+			firstWorld = false;
+			sb.append("    \"").append(escape(entry.getKey())).append("\": {");
+			boolean firstPhase = true;
+			for (Phase phase : Phase.values()) {
+				Histogram h = entry.getValue()[phase.ordinal()];
+				if (h.getCount() == 0) continue;
+				sb.append(firstPhase ? "\n" : ",\n");
+				firstPhase = false;
+				sb.append("      \"").append(phase.id).append("\": {")
+						.append("\"count\": ").append(h.getCount())
+						.append(", \"mean\": ").append(h.getMean())
+						.append(", \"p50\": ").append(h.percentile(0.5))
+						.append(", \"p99\": ").append(h.percentile(0.99))
+						.append(", \"max\": ").append(h.getMax())
+						.append('}');
+			}
+			sb.append(firstPhase ? "}" : "\n    }");
+		}
+		sb.append(firstWorld ? "}" : "\n  }").append("\n}\n");
+		return sb.toString();
+	}
+
+	private static Histogram[] newPhases() {
+		Histogram[] phases = new Histogram[Phase.values().length];
+		for (int i = 0; i < phases.length; i++) { phases[i] = new Histogram(); }
+		return phases;
+	}
+
+	static String escape(String s) {
+		StringBuilder sb = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') { sb.append('\\').append(c); }
+			else if (c < 0x20) { sb.append(String.format("\\u%04x", (int) c)); }
+			else { sb.append(c); }
+		}
+		return sb.toString();
+	}
+}
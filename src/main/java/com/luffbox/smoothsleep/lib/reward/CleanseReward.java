@@ -0,0 +1,34 @@
+package com.luffbox.smoothsleep.lib.reward;
+
+import com.luffbox.smoothsleep.lib.ConfigHelper;
+import org.bukkit.entity.Player;
+import org.bukkit.potion.PotionEffect;
+
+/**
+ * Removes the negative and/or positive status effects ('heal-negative-status' and
+ * 'heal-positive-status') on waking. Queued after a player's other rewards, so it
+ * runs after their potion effects are applied, same as before rewards were queued.
+ */
+public class CleanseReward implements SleepReward {
+
+	private final boolean negative, positive;
+
+	public CleanseReward(boolean negative, boolean positive) {
+		this.negative = negative;
+		this.positive = positive;
+	}
+
+	@Override
+	public int getRequiredHours() { return 0; } // The hours for each set are checked before it's queued
+
+	// Only removes the effects the player actually has, instead of every type in the sets
+	@Override
+	public void grant(Player plr) {
+		for (PotionEffect pe : plr.getActivePotionEffects()) {
+			if ((negative && ConfigHelper.negativeEffects.contains(pe.getType()))
+					|| (positive && ConfigHelper.positiveEffects.contains(pe.getType()))) {
+				plr.removePotionEffect(pe.getType());
+			}
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package com.luffbox.smoothsleep.lib.reward;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+
+/**
+ * Runs a command from the console. {USERNAME} and {WORLD} in the command are
+ * replaced with the player's name and World.
+ */
+public class CommandReward implements SleepReward {
+
+	private final int hours;
+	private final String command;
+
+	public CommandReward(int requiredHours, String command) {
+		hours = requiredHours;
+		this.command = command.startsWith("/") ? command.substring(1) : command;
+	}
+
+	@Override
+	public int getRequiredHours() { return hours; }
+
+	@Override
+	public void grant(Player plr) {
+		String cmd = command.replace("{USERNAME}", plr.getName()).replace("{WORLD}", plr.getWorld().getName());
+		Bukkit.dispatchCommand(Bukkit.getConsoleSender(), cmd);
+	}
+
+	// Console commands run on the global thread
+	@Override
+	public boolean isPlayerBound() { return false; }
+}
@@ -0,0 +1,28 @@
+package com.luffbox.smoothsleep.lib.reward;
+
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Gives the player an item, dropping it at their feet if their inventory is full.
+ */
+public class ItemReward implements SleepReward {
+
+	private final int hours;
+	private final ItemStack item;
+
+	public ItemReward(int requiredHours, ItemStack item) {
+		hours = requiredHours;
+		this.item = item;
+	}
+
+	@Override
+	public int getRequiredHours() { return hours; }
+
+	@Override
+	public void grant(Player plr) {
+		for (ItemStack left : plr.getInventory().addItem(item.clone()).values()) {
+			plr.getWorld().dropItemNaturally(plr.getLocation(), left);
+		}
+	}
+}
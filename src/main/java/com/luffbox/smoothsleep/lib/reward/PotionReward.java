@@ -0,0 +1,34 @@
+package com.luffbox.smoothsleep.lib.reward;
+
+import org.bukkit.entity.Player;
+import org.bukkit.potion.PotionEffect;
+
+import java.util.List;
+
+/**
+ * Applies the 'sleep-rewards.potion-effects' effects, unless the player already
+ * has a stronger and longer version of one.
+ */
+public class PotionReward implements SleepReward {
+
+	private final int hours;
+	private final List<PotionEffect> effects;
+
+	public PotionReward(int requiredHours, List<PotionEffect> effects) {
+		hours = requiredHours;
+		this.effects = effects;
+	}
+
+	@Override
+	public int getRequiredHours() { return hours; }
+
+	@Override
+	public void grant(Player plr) {
+		for (PotionEffect pe : effects) {
+			PotionEffect curFx = plr.getPotionEffect(pe.getType());
+			if (curFx == null || curFx.getAmplifier() < pe.getAmplifier() || curFx.getDuration() < pe.getDuration()) {
+				plr.addPotionEffect(pe);
+			}
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package com.luffbox.smoothsleep.lib.reward;
+
+import com.luffbox.smoothsleep.SmoothSleep;
+import com.luffbox.smoothsleep.lib.ConfigHelper;
+import com.luffbox.smoothsleep.lib.Purgeable;
+import com.luffbox.smoothsleep.lib.scheduler.TaskHandle;
+import com.luffbox.smoothsleep.tasks.RewardTask;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Hands out sleep rewards a few at a time, so a morning where everyone earns
+ * commands and items doesn't run them all in the same tick. Up to
+ * 'reward-queue-per-tick' rewards are given each tick. On Folia, rewards that
+ * change the player are given on the thread that owns them. Once the plugin is
+ * disabled nothing can be scheduled, so rewards are given right away instead.
+ */
+public class RewardQueue implements Purgeable {
+
+	private final SmoothSleep pl;
+	private final Queue<Grant> queue = new ArrayDeque<>();
+	private TaskHandle task;
+
+	public RewardQueue(SmoothSleep plugin) { pl = plugin; }
+
+	public synchronized void add(Player plr, SleepReward reward) {
+		Grant grant = new Grant(plr, reward);
+		if (!pl.isEnabled()) { grant.grant(pl); return; }
+		queue.add(grant);
+		if (task == null) { task = new RewardTask(this).runTimer(pl.scheduler, 0L, 1L); }
+	}
+
+	public synchronized void tick() {
+		int perTick = Math.max(1, pl.data.config.getInt(ConfigHelper.GlobalSettingKey.REWARDS_PER_TICK));
+		for (int i = 0; i < perTick && !queue.isEmpty(); i++) { queue.poll().grant(pl); }
+		if (queue.isEmpty()) { stop(); }
+	}
+
+	private void stop() {
+		if (task != null) { task.cancel(); }
+		task = null;
+	}
+
+	/**
+	 * Gives out everything still queued, so nobody misses a reward over a reload.
+	 */
+	@Override
+	public synchronized void purgeData() {
+		stop();
+		while (!queue.isEmpty()) { queue.poll().grant(pl); }
+	}
+
+	private static class Grant {
+		private final Player plr;
+		private final SleepReward reward;
+
+		private Grant(Player plr, SleepReward reward) {
+			this.plr = plr;
+			this.reward = reward;
+		}
+
+		private void grant(SmoothSleep pl) {
+			if (!plr.isOnline()) return;
+			if (reward.isPlayerBound() && pl.isEnabled()) { pl.scheduler.runFor(plr, this::grantNow); }
+			else { grantNow(); }
+		}
+
+		private void grantNow() {
+			try {
+				reward.grant(plr);
+			} catch (Exception e) {
+				SmoothSleep.logWarning("Failed to give a sleep reward to " + plr.getName() + ": " + e.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package com.luffbox.smoothsleep.lib.reward;
+
+import org.bukkit.entity.Player;
+
+/**
+ * Something given to a player for sleeping through the night. Rewards are built
+ * once when the config is loaded and handed out through the {@link RewardQueue}.
+ * @see com.luffbox.smoothsleep.lib.CompiledSettings#getRewards()
+ */
+public interface SleepReward {
+
+	/**
+	 * @return How many in-game hours the player must have slept to get this reward
+	 */
+	int getRequiredHours();
+
+	/**
+	 * @param plr The player to give the reward to, who is online
+	 */
+	void grant(Player plr);
+
+	/**
+	 * @return True if granting changes the player, in which case it's done on the thread
+	 * that owns the player on Folia. Rewards that don't touch the player are granted
+	 * on the global thread.
+	 */
+	default boolean isPlayerBound() { return true; }
+}
@@ -0,0 +1,65 @@
+package com.luffbox.smoothsleep.lib.scheduler;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * Runs everything on the main thread through the {@link org.bukkit.scheduler.BukkitScheduler}.
+ * Work for an entity or chunk is run right away when called from the main thread,
+ * so nothing changes order compared to calling it directly.
+ */
+public class BukkitTaskScheduler implements TaskScheduler {
+
+	private final Plugin pl;
+
+	public BukkitTaskScheduler(Plugin plugin) { pl = plugin; }
+
+	@Override
+	public boolean isRegionized() { return false; }
+
+	@Override
+	public void runGlobal(Runnable task) {
+		if (Bukkit.isPrimaryThread()) { task.run(); }
+		else { Bukkit.getScheduler().runTask(pl, task); }
+	}
+
+	@Override
+	public TaskHandle runLater(Runnable task, long delay) { return wrap(Bukkit.getScheduler().runTaskLater(pl, task, delay)); }
+
+	@Override
+	public TaskHandle runTimer(Runnable task, long delay, long period) {
+		return wrap(Bukkit.getScheduler().runTaskTimer(pl, task, delay, period));
+	}
+
+	@Override
+	public void runFor(Entity entity, Runnable task) { runGlobal(task); }
+
+	@Override
+	public TaskHandle runLaterFor(Entity entity, Runnable task, long delay) { return runLater(task, delay); }
+
+	@Override
+	public TaskHandle runTimerFor(Entity entity, Runnable task, long delay, long period) {
+		// Stop with the entity, the same as Folia's entity scheduler does
+		BukkitTask[] handle = new BukkitTask[1];
+		handle[0] = Bukkit.getScheduler().runTaskTimer(pl, () -> {
+			if (entity.isValid()) { task.run(); }
+			else { handle[0].cancel(); }
+		}, delay, period);
+		return wrap(handle[0]);
+	}
+
+	@Override
+	public void runAt(World w, int chunkX, int chunkZ, Runnable task) { runGlobal(task); }
+
+	private static TaskHandle wrap(BukkitTask task) {
+		return new TaskHandle() {
+			@Override
+			public void cancel() { task.cancel(); }
+			@Override
+			public boolean isCancelled() { return task.isCancelled(); }
+		};
+	}
+}
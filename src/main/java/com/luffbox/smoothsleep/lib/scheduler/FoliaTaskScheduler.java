@@ -0,0 +1,74 @@
+package com.luffbox.smoothsleep.lib.scheduler;
+
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Runs tasks on Folia's global region, region and entity schedulers. Folia
+ * doesn't allow a delay of 0, so delays are run one tick later instead.
+ */
+public class FoliaTaskScheduler implements TaskScheduler {
+
+	private final Plugin pl;
+
+	public FoliaTaskScheduler(Plugin plugin) { pl = plugin; }
+
+	@Override
+	public boolean isRegionized() { return true; }
+
+	@Override
+	public void runGlobal(Runnable task) {
+		if (Bukkit.isGlobalTickThread()) { task.run(); }
+		else { Bukkit.getGlobalRegionScheduler().execute(pl, task); }
+	}
+
+	@Override
+	public TaskHandle runLater(Runnable task, long delay) {
+		return wrap(Bukkit.getGlobalRegionScheduler().runDelayed(pl, st -> task.run(), Math.max(1L, delay)));
+	}
+
+	@Override
+	public TaskHandle runTimer(Runnable task, long delay, long period) {
+		return wrap(Bukkit.getGlobalRegionScheduler().runAtFixedRate(pl, st -> task.run(),
+				Math.max(1L, delay), Math.max(1L, period)));
+	}
+
+	@Override
+	public void runFor(Entity entity, Runnable task) {
+		if (Bukkit.isOwnedByCurrentRegion(entity)) { task.run(); }
+		else { entity.getScheduler().run(pl, st -> task.run(), null); }
+	}
+
+	@Override
+	public TaskHandle runLaterFor(Entity entity, Runnable task, long delay) {
+		return wrap(entity.getScheduler().runDelayed(pl, st -> task.run(), null, Math.max(1L, delay)));
+	}
+
+	@Override
+	public TaskHandle runTimerFor(Entity entity, Runnable task, long delay, long period) {
+		return wrap(entity.getScheduler().runAtFixedRate(pl, st -> task.run(), null,
+				Math.max(1L, delay), Math.max(1L, period)));
+	}
+
+	@Override
+	public void runAt(World w, int chunkX, int chunkZ, Runnable task) {
+		if (Bukkit.isOwnedByCurrentRegion(w, chunkX, chunkZ)) { task.run(); }
+		else { Bukkit.getRegionScheduler().execute(pl, w, chunkX, chunkZ, task); }
+	}
+
+	// Entity tasks are null if the entity was already removed, which is treated as cancelled
+	private static TaskHandle wrap(ScheduledTask task) {
+		return new TaskHandle() {
+			@Override
+			public void cancel() { if (task != null) task.cancel(); }
+			@Override
+			public boolean isCancelled() {
+				return task == null || task.getExecutionState() == ScheduledTask.ExecutionState.CANCELLED
+						|| task.getExecutionState() == ScheduledTask.ExecutionState.CANCELLED_RUNNING;
+			}
+		};
+	}
+}
@@ -0,0 +1,38 @@
+package com.luffbox.smoothsleep.lib.scheduler;
+
+import org.bukkit.entity.Entity;
+
+/**
+ * A task that can cancel itself, like a {@link org.bukkit.scheduler.BukkitRunnable}
+ * but scheduled through a {@link TaskScheduler} so it works on Folia too.
+ */
+public abstract class PluginRunnable implements Runnable {
+
+	private TaskHandle handle;
+
+	public synchronized TaskHandle runLater(TaskScheduler scheduler, long delay) {
+		checkNotScheduled();
+		return handle = scheduler.runLater(this, delay);
+	}
+
+	public synchronized TaskHandle runTimer(TaskScheduler scheduler, long delay, long period) {
+		checkNotScheduled();
+		return handle = scheduler.runTimer(this, delay, period);
+	}
+
+	public synchronized TaskHandle runTimerFor(TaskScheduler scheduler, Entity entity, long delay, long period) {
+		checkNotScheduled();
+		return handle = scheduler.runTimerFor(entity, this, delay, period);
+	}
+
+	public synchronized void cancel() {
+		if (handle == null) throw new IllegalStateException("Not scheduled yet");
+		handle.cancel();
+	}
+
+	public synchronized boolean isCancelled() { return handle != null && handle.isCancelled(); }
+
+	private void checkNotScheduled() {
+		if (handle != null) throw new IllegalStateException("Already scheduled");
+	}
+}
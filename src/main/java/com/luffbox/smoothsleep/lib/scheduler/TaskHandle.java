@@ -0,0 +1,14 @@
+package com.luffbox.smoothsleep.lib.scheduler;
+
+/**
+ * A task scheduled through a {@link TaskScheduler}, whichever backend it ran on.
+ */
+public interface TaskHandle {
+
+	void cancel();
+
+	/**
+	 * @return True if the task was cancelled before it finished
+	 */
+	boolean isCancelled();
+}
@@ -0,0 +1,65 @@
+package com.luffbox.smoothsleep.lib.scheduler;
+
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Schedules SmoothSleep's work on the right thread for the server. On Bukkit,
+ * Spigot and Paper everything runs on the main thread. On Folia, World time and
+ * other work that isn't tied to a place runs on the global region thread, work
+ * on a player runs on the thread that owns the player, and work on a chunk runs
+ * on the thread that owns the chunk.
+ * @see #create(Plugin)
+ */
+public interface TaskScheduler {
+
+	String FOLIA_CLASS = "io.papermc.paper.threadedregions.RegionizedServer";
+
+	/**
+	 * @param plugin The plugin the tasks belong to
+	 * @return The Folia scheduler if the server is running Folia, otherwise the Bukkit one
+	 */
+	static TaskScheduler create(Plugin plugin) {
+		try {
+			Class.forName(FOLIA_CLASS);
+			return new FoliaTaskScheduler(plugin);
+		} catch (ClassNotFoundException e) {
+			return new BukkitTaskScheduler(plugin);
+		}
+	}
+
+	/**
+	 * @return True if the server ticks regions on separate threads, in which case
+	 * the run methods may return before the task has run
+	 */
+	boolean isRegionized();
+
+	/**
+	 * Runs a task on the global thread, right away if this is that thread.
+	 */
+	void runGlobal(Runnable task);
+
+	TaskHandle runLater(Runnable task, long delay);
+
+	TaskHandle runTimer(Runnable task, long delay, long period);
+
+	/**
+	 * Runs a task on the thread that owns the entity, right away if this is that thread.
+	 * Nothing is run if the entity is removed first.
+	 */
+	void runFor(Entity entity, Runnable task);
+
+	TaskHandle runLaterFor(Entity entity, Runnable task, long delay);
+
+	/**
+	 * Repeats a task on the thread that owns the entity. The task stops by itself
+	 * once the entity is removed.
+	 */
+	TaskHandle runTimerFor(Entity entity, Runnable task, long delay, long period);
+
+	/**
+	 * Runs a task on the thread that owns a chunk, right away if this is that thread.
+	 */
+	void runAt(World w, int chunkX, int chunkZ, Runnable task);
+}
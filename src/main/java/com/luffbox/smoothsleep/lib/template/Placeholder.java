@@ -0,0 +1,168 @@
+package com.luffbox.smoothsleep.lib.template;
+
+import com.luffbox.smoothsleep.SmoothSleep;
+import com.luffbox.smoothsleep.lib.MiscUtils;
+import org.bukkit.Bukkit;
+
+import java.text.DecimalFormatSymbols;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.bukkit.ChatColor.stripColor;
+
+/**
+ * Every placeholder that can be used in a {@link Template}. Each one appends its
+ * value straight into the render buffer instead of building a String first.
+ * @see MiscUtils#sub
+ */
+public enum Placeholder {
+	HOUR_12("12H", false),
+	HOUR_24("24H", false),
+	MIN("MIN", false),
+	MER_UPPER("MER_UPPER", false),
+	MER_LOWER("MER_LOWER", false),
+	SLEEPERS("SLEEPERS", false),
+	WAKERS("WAKERS", false),
+	TOTAL("TOTAL", false),
+	TIMESCALE("TIMESCALE", false),
+	ETA_SECONDS("ETA_SECONDS", false),
+	ETA("ETA", false),
+	USERNAME("USERNAME", true),
+	DISPLAYNAME("DISPLAYNAME", true),
+	DISPLAYNAME_STRIP("DISPLAYNAME_STRIP", true),
+	HOURS_SLEPT("HOURS_SLEPT", true),
+	LEVEL("LEVEL", true),
+	TIME_LIVED("TIME_LIVED", true),
+	DAYS_LIVED("DAYS_LIVED", true),
+	REM_HOURS_LIVED("REM_HOURS_LIVED", true),
+	REM_MINS_LIVED("REM_MINS_LIVED", true),
+	TOTAL_HOURS_LIVED("TOTAL_HOURS_LIVED", true),
+	TOTAL_MINS_LIVED("TOTAL_MINS_LIVED", true),
+	WORLD("WORLD", false),
+	SERVER_IP("SERVER_IP", false),
+	SERVER_MOTD("SERVER_MOTD", false),
+	SERVER_NAME("SERVER_NAME", false),
+	SERVER_MOTD_STRIP("SERVER_MOTD_STRIP", false),
+	SERVER_NAME_STRIP("SERVER_NAME_STRIP", false),
+	NICKNAME("NICKNAME", true),
+	NICKNAME_STRIP("NICKNAME_STRIP", true),
+	HEALTH("HEALTH", true),
+	HEALTH_PER("HEALTH_PER", true),
+	HEALTH_BAR("HEALTH_BAR", true),
+	FOOD("FOOD", true),
+	FOOD_PER("FOOD_PER", true),
+	FOOD_BAR("FOOD_BAR", true),
+	;
+
+	private static final Map<String, Placeholder> byToken = new HashMap<>();
+	private static char decimalSep = '.';
+	private static String serverIp = "", serverMotd = "", serverName = "", serverMotdStrip = "", serverNameStrip = "";
+
+	static {
+		for (Placeholder ph : values()) { byToken.put(ph.token, ph); }
+	}
+
+	public final String token;
+	/**
+	 * True if the value depends on who it's rendered for. Templates that only
+	 * use placeholders where this is false can be rendered once per World.
+	 */
+	public final boolean perPlayer;
+	Placeholder(String token, boolean perPlayer) { this.token = token; this.perPlayer = perPlayer; }
+
+	/**
+	 * @param token The text between the braces, such as "SLEEPERS"
+	 * @return The matching placeholder, or null if there isn't one
+	 */
+	public static Placeholder fromToken(String token) { return byToken.get(token); }
+
+	/**
+	 * Caches the values that don't change while the server is running. Called on
+	 * every reload, so a changed MOTD will show up after a /ssreload.
+	 */
+	public static void refreshServerValues() {
+		decimalSep = DecimalFormatSymbols.getInstance().getDecimalSeparator();
+		serverIp = String.valueOf(Bukkit.getIp());
+		String motd = String.valueOf(Bukkit.getMotd()), name = String.valueOf(Bukkit.getServer().getName());
+		serverMotd = MiscUtils.trans(motd);
+		serverName = MiscUtils.trans(name);
+		serverMotdStrip = MiscUtils.trans(stripColor(motd));
+		serverNameStrip = MiscUtils.trans(stripColor(name));
+	}
+
+	public void append(StringBuilder sb, RenderContext ctx) {
+		long time = ctx.getWorldTime();
+		switch (this) {
+			case HOUR_12: sb.append(MiscUtils.ticksTo12Hours(time)); break;
+			case HOUR_24: pad2(sb, MiscUtils.ticksTo24Hours(time)); break;
+			case MIN: pad2(sb, MiscUtils.ticksToMinutes(time)); break;
+			case MER_UPPER: sb.append(MiscUtils.ticksIsAM(time) ? "AM" : "PM"); break;
+			case MER_LOWER: sb.append(MiscUtils.ticksIsAM(time) ? "am" : "pm"); break;
+			case SLEEPERS: sb.append(ctx.getSleepers()); break;
+			case WAKERS: sb.append(ctx.getWakers()); break;
+			case TOTAL: sb.append(ctx.getSleepers() + ctx.getWakers()); break;
+			case TIMESCALE: decimal2(sb, ctx.getTimescale()); break;
+			case ETA_SECONDS: sb.append(etaSeconds(ctx)); break;
+			case ETA:
+				long eta = etaSeconds(ctx);
+				sb.append(eta / 60).append(':');
+				pad2(sb, (int) (eta % 60));
+				break;
+			case USERNAME: sb.append(ctx.getName()); break;
+			case DISPLAYNAME: appendTrans(sb, ctx.getDisplayName()); break;
+			case DISPLAYNAME_STRIP: appendTrans(sb, stripColor(ctx.getDisplayName())); break;
+			case HOURS_SLEPT: sb.append(ctx.getTicksSlept() / 1000L); break;
+			case LEVEL: sb.append(ctx.getLevel()); break;
+			case TIME_LIVED:
+				DAYS_LIVED.append(sb, ctx); sb.append("d, ");
+				REM_HOURS_LIVED.append(sb, ctx); sb.append("h, ");
+				REM_MINS_LIVED.append(sb, ctx); sb.append('m');
+				break;
+			case DAYS_LIVED: sb.append(ctx.getTicksLived() / SmoothSleep.TICKS_PER_DAY); break;
+			case REM_HOURS_LIVED: sb.append((ctx.getTicksLived() % SmoothSleep.TICKS_PER_DAY) / SmoothSleep.TICKS_PER_HOUR); break;
+			case REM_MINS_LIVED: sb.append((ctx.getTicksLived() % SmoothSleep.TICKS_PER_DAY % SmoothSleep.TICKS_PER_HOUR) / SmoothSleep.TICKS_PER_MIN); break;
+			case TOTAL_HOURS_LIVED: sb.append(ctx.getTicksLived() / SmoothSleep.TICKS_PER_HOUR); break;
+			case TOTAL_MINS_LIVED: sb.append(ctx.getTicksLived() / SmoothSleep.TICKS_PER_MIN); break;
+			case WORLD: appendTrans(sb, ctx.getWorld().getName()); break;
+			case SERVER_IP: sb.append(serverIp); break;
+			case SERVER_MOTD: sb.append(serverMotd); break;
+			case SERVER_NAME: sb.append(serverName); break;
+			case SERVER_MOTD_STRIP: sb.append(serverMotdStrip); break;
+			case SERVER_NAME_STRIP: sb.append(serverNameStrip); break;
+			case NICKNAME: appendTrans(sb, ctx.getNickname()); break;
+			case NICKNAME_STRIP: appendTrans(sb, stripColor(ctx.getNickname())); break;
+			case HEALTH: sb.append((int) ctx.getHealth()); break;
+			case HEALTH_PER: sb.append((int) (ctx.getHealth() / ctx.getMaxLife() * 100)).append('%'); break;
+			case HEALTH_BAR: MiscUtils.appendBar(sb, (int) ctx.getHealth(), (int) ctx.getMaxLife(), 20); break;
+			case FOOD: sb.append(ctx.getFoodLevel()); break;
+			case FOOD_PER: sb.append((int) (ctx.getFoodLevel() / 20.0 * 100)).append('%'); break;
+			case FOOD_BAR: MiscUtils.appendBar(sb, ctx.getFoodLevel(), 20, 20); break;
+		}
+	}
+
+	// Real seconds until morning, rounded up so it doesn't read 0 while it's still night
+	private static long etaSeconds(RenderContext ctx) {
+		long ticks = ctx.getTicksToMorning();
+		return ticks <= 0 ? 0 : (ticks + 19) / 20;
+	}
+
+	// Values used to be substituted before the color codes were translated, so '&' codes in them still work
+	private static void appendTrans(StringBuilder sb, String val) {
+		if (val == null || val.indexOf('&') < 0) { sb.append(val); }
+		else { sb.append(MiscUtils.trans(val)); }
+	}
+
+	// Same as String.format("%02d", val) for the small positive values used here
+	private static void pad2(StringBuilder sb, int val) {
+		if (val >= 0 && val < 10) sb.append('0');
+		sb.append(val);
+	}
+
+	// Same as String.format("%.2f", val) without going through Formatter
+	private static void decimal2(StringBuilder sb, double val) {
+		long hundredths = Math.round(Math.abs(val) * 100.0);
+		if (val < 0 && hundredths != 0) sb.append('-');
+		sb.append(hundredths / 100).append(decimalSep);
+		pad2(sb, (int) (hundredths % 100));
+	}
+}
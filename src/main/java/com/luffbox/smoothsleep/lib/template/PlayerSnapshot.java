@@ -0,0 +1,48 @@
+package com.luffbox.smoothsleep.lib.template;
+
+import com.luffbox.smoothsleep.lib.hooks.UserHelper;
+import org.bukkit.attribute.Attribute;
+import org.bukkit.attribute.AttributeInstance;
+import org.bukkit.entity.Player;
+
+/**
+ * An immutable copy of everything a {@link Placeholder} reads from a player. It's
+ * captured on the thread that owns the player, so templates can be rendered
+ * from it on any thread.
+ * @see RenderContext#use(PlayerSnapshot)
+ */
+public final class PlayerSnapshot {
+
+	private final String name, displayName, nickname;
+	private final double health, maxHealth;
+	private final int food, level, ticksLived;
+
+	private PlayerSnapshot(Player p, UserHelper users) {
+		name = p.getName();
+		displayName = p.getDisplayName();
+		nickname = users == null ? displayName : users.getNickname(p);
+		health = p.getHealth();
+		AttributeInstance mli = p.getAttribute(Attribute.GENERIC_MAX_HEALTH);
+		maxHealth = mli == null ? 20 : mli.getValue();
+		food = p.getFoodLevel();
+		level = p.getLevel();
+		ticksLived = p.getTicksLived();
+	}
+
+	/**
+	 * Call from the thread that owns the player.
+	 * @param p The player to copy
+	 * @param users Looks up the nickname, or null to use the display name
+	 * @return A new snapshot of the player
+	 */
+	public static PlayerSnapshot capture(Player p, UserHelper users) { return new PlayerSnapshot(p, users); }
+
+	public String getName() { return name; }
+	public String getDisplayName() { return displayName; }
+	public String getNickname() { return nickname; }
+	public double getHealth() { return health; }
+	public double getMaxHealth() { return maxHealth; }
+	public int getFoodLevel() { return food; }
+	public int getLevel() { return level; }
+	public int getTicksLived() { return ticksLived; }
+}
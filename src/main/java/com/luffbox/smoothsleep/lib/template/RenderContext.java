@@ -0,0 +1,94 @@
+package com.luffbox.smoothsleep.lib.template;
+
+import com.luffbox.smoothsleep.lib.hooks.UserHelper;
+import org.bukkit.World;
+import org.bukkit.attribute.Attribute;
+import org.bukkit.attribute.AttributeInstance;
+import org.bukkit.entity.Player;
+
+/**
+ * Holds everything a {@link Template} may need while rendering. One of these is
+ * meant to be kept and refilled with {@link #set} before each render instead of
+ * being created every time. Values that cost something to look up (nickname, max
+ * health) are only fetched if a placeholder actually asks for them.
+ * <p>
+ * When given a {@link PlayerSnapshot}, player values are read from it instead of
+ * the player, which lets the context be used off the thread that owns the player.
+ */
+public class RenderContext {
+
+	private final UserHelper users;
+	private final StringBuilder sb = new StringBuilder(64);
+
+	private World w;
+	private Player p;
+	private PlayerSnapshot ps;
+	private int sleepers, wakers;
+	private double timescale;
+	private long ticksSlept, worldTime, ticksToMorning;
+
+	private String nickname;
+	private double maxLife = -1;
+
+	public RenderContext(UserHelper userHelper) { users = userHelper; }
+
+	public RenderContext set(World w, Player p, int sleepers, int wakers, double timescale, long ticksSlept, long worldTime,
+			long ticksToMorning) {
+		this.w = w;
+		this.p = p;
+		this.sleepers = sleepers;
+		this.wakers = wakers;
+		this.timescale = timescale;
+		this.ticksSlept = ticksSlept;
+		this.worldTime = worldTime;
+		this.ticksToMorning = ticksToMorning;
+		ps = null;
+		nickname = null;
+		maxLife = -1;
+		return this;
+	}
+
+	/**
+	 * Reads player values from a snapshot until the next {@link #set}.
+	 * @param snapshot The player's snapshot
+	 * @return This context
+	 */
+	public RenderContext use(PlayerSnapshot snapshot) {
+		ps = snapshot;
+		return this;
+	}
+
+	public World getWorld() { return w; }
+	public Player getPlayer() { return p; }
+	public int getSleepers() { return sleepers; }
+	public int getWakers() { return wakers; }
+	public double getTimescale() { return timescale; }
+	public long getTicksSlept() { return ticksSlept; }
+	public long getWorldTime() { return worldTime; }
+	public long getTicksToMorning() { return ticksToMorning; }
+
+	public String getName() { return ps != null ? ps.getName() : p.getName(); }
+	public String getDisplayName() { return ps != null ? ps.getDisplayName() : p.getDisplayName(); }
+	public double getHealth() { return ps != null ? ps.getHealth() : p.getHealth(); }
+	public int getFoodLevel() { return ps != null ? ps.getFoodLevel() : p.getFoodLevel(); }
+	public int getLevel() { return ps != null ? ps.getLevel() : p.getLevel(); }
+	public int getTicksLived() { return ps != null ? ps.getTicksLived() : p.getTicksLived(); }
+
+	public String getNickname() {
+		if (ps != null) return ps.getNickname();
+		if (nickname == null) nickname = users == null ? p.getDisplayName() : users.getNickname(p);
+		return nickname;
+	}
+
+	public double getMaxLife() {
+		if (ps != null) return ps.getMaxHealth();
+		if (maxLife < 0) {
+			AttributeInstance mli = p.getAttribute(Attribute.GENERIC_MAX_HEALTH);
+			maxLife = mli == null ? 20 : mli.getValue();
+		}
+		return maxLife;
+	}
+
+	// Reused between renders, cleared by the template before use
+	StringBuilder builder() { return sb; }
+}
@@ -0,0 +1,98 @@
+package com.luffbox.smoothsleep.lib.template;
+
+import com.luffbox.smoothsleep.lib.MiscUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A placeholder string that has been split into literal text and placeholders
+ * ahead of time. Color codes in the literal text are translated once when the
+ * template is compiled, so rendering only has to append the placeholder values.
+ * Unknown placeholders are left in the output as-is, like StrSubstitutor did, and
+ * so is a brace escaped with a '$' in front of it ("${USERNAME}" shows "{USERNAME}").
+ * Unlike StrSubstitutor, placeholders inside placeholder values aren't filled in.
+ */
+public final class Template {
+
+	public static final Template EMPTY = compile("");
+
+	private final String source;
+	private final String[] literals; // Always one more literal than placeholders, may be empty
+	private final Placeholder[] placeholders;
+	private final boolean playerIndependent;
+
+	private Template(String source, String[] literals, Placeholder[] placeholders) {
+		this.source = source;
+		this.literals = literals;
+		this.placeholders = placeholders;
+		boolean independent = true;
+		for (Placeholder ph : placeholders) { if (ph.perPlayer) { independent = false; break; } }
+		playerIndependent = independent;
+	}
+
+	public static Template compile(String source) {
+		if (source == null) source = "";
+		List<String> lits = new ArrayList<>();
+		List<Placeholder> phs = new ArrayList<>();
+		StringBuilder lit = new StringBuilder();
+		int i = 0;
+		while (i < source.length()) {
+			int open = source.indexOf('{', i);
+			if (open > i && source.charAt(open - 1) == '$') { // Escaped, keep the brace and drop the '$'
+				lit.append(source, i, open - 1).append('{');
+				i = open + 1;
+				continue;
+			}
+			int close = open < 0 ? -1 : source.indexOf('}', open + 1);
+			if (close < 0) { lit.append(source, i, source.length()); break; }
+			Placeholder ph = Placeholder.fromToken(source.substring(open + 1, close));
+			if (ph == null) { // Not one of ours, keep the brace and carry on after it
+				lit.append(source, i, open + 1);
+				i = open + 1;
+				continue;
+			}
+			lit.append(source, i, open);
+			lits.add(MiscUtils.trans(lit.toString()));
+			phs.add(ph);
+			lit.setLength(0);
+			i = close + 1;
+		}
+		lits.add(MiscUtils.trans(lit.toString()));
+		return new Template(source, lits.toArray(new String[0]), phs.toArray(new Placeholder[0]));
+	}
+
+	/**
+	 * @return The template as written in the config, before compiling
+	 */
+	public String getSource() { return source; }
+
+	public boolean uses(Placeholder ph) {
+		for (Placeholder p : placeholders) { if (p == ph) return true; }
+		return false;
+	}
+
+	public boolean isConstant() { return placeholders.length == 0; }
+
+	/**
+	 * @return True if every placeholder in this template renders the same for every
+	 * player in a World, meaning it only has to be rendered once per World.
+	 * @see Placeholder#perPlayer
+	 */
+	public boolean isPlayerIndependent() { return playerIndependent; }
+
+	public String render(RenderContext ctx) {
+		if (isConstant()) return literals[0];
+		StringBuilder sb = ctx.builder();
+		sb.setLength(0);
+		sb.append(literals[0]);
+		for (int i = 0; i < placeholders.length; i++) {
+			placeholders[i].append(sb, ctx);
+			sb.append(literals[i + 1]);
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() { return source; }
+}
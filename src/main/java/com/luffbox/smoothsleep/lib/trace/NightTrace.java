@@ -0,0 +1,121 @@
+package com.luffbox.smoothsleep.lib.trace;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * A night recorded by the {@link TraceRecorder}, read back for replaying.
+ * <p>
+ * A trace file is a header (magic, version, World name, the World time and wall
+ * clock time the night started at) followed by fixed size records of a type byte,
+ * the server tick since the night started, and two ints:
+ * <ul>
+ *     <li>{@link #TICK}: the World time and the timescale (as float bits) of a sleep tick</li>
+ *     <li>{@link #STATE}: a player number and their new sleep state, or {@link #REMOVED}</li>
+ *     <li>{@link #END}: how many records were dropped because the buffer was full. The recorder
+ *     deletes traces that dropped records, so this is 0 in any it keeps.</li>
+ * </ul>
+ */
+public final class NightTrace {
+
+	public static final int MAGIC = 0x53535452; // "SSTR"
+	public static final short VERSION = 1;
+	public static final String EXT = ".sstrace";
+	public static final int RECORD_BYTES = 13;
+
+	public static final byte TICK = 0, STATE = 1, END = 2;
+	public static final int REMOVED = -1;
+
+	private final String world;
+	private final long startTime, startedAt;
+	private byte[] types = new byte[1024];
+	private int[] ticks = new int[1024], a = new int[1024], b = new int[1024];
+	private int count = 0, dropped = 0;
+
+	private NightTrace(String world, long startTime, long startedAt) {
+		this.world = world;
+		this.startTime = startTime;
+		this.startedAt = startedAt;
+	}
+
+	static void writeHeader(DataOutputStream out, String world, long startTime, long startedAt) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeShort(VERSION);
+		out.writeUTF(world);
+		out.writeLong(startTime);
+		out.writeLong(startedAt);
+	}
+
+	/**
+	 * Reads a trace. A trace cut short (such as by a crash) is read up to its last whole record.
+	 * @param file The trace file
+	 * @return The trace
+	 * @throws IOException If the file can't be read or isn't a trace
+	 */
+	public static NightTrace read(Path file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC) throw new IOException("Not a SmoothSleep trace: " + file);
+			short version = in.readShort();
+			if (version != VERSION) throw new IOException("Unsupported trace version " + version + ": " + file);
+			NightTrace trace = new NightTrace(in.readUTF(), in.readLong(), in.readLong());
+			try {
+				while (true) {
+					byte type = in.readByte();
+					int tick = in.readInt(), ra = in.readInt(), rb = in.readInt();
+					if (type == END) { trace.dropped += ra; } else { trace.add(type, tick, ra, rb); }
+				}
+			} catch (EOFException ignored) {}
+			return trace;
+		}
+	}
+
+	private void add(byte type, int tick, int ra, int rb) {
+		if (count == types.length) {
+			types = Arrays.copyOf(types, count * 2);
+			ticks = Arrays.copyOf(ticks, count * 2);
+			a = Arrays.copyOf(a, count * 2);
+			b = Arrays.copyOf(b, count * 2);
+		}
+		types[count] = type;
+		ticks[count] = tick;
+		a[count] = ra;
+		b[count++] = rb;
+	}
+
+	public String getWorld() { return world; }
+
+	/**
+	 * @return The World time when the night started
+	 */
+	public long getStartTime() { return startTime; }
+
+	/**
+	 * @return When the night started, in epoch millis
+	 */
+	public long getStartedAt() { return startedAt; }
+
+	/**
+	 * @return Records the recorder had to drop. If not 0, the trace can't be replayed.
+	 */
+	public int getDropped() { return dropped; }
+
+	public int size() { return count; }
+	public byte getType(int i) { return types[i]; }
+	public int getTick(int i) { return ticks[i]; }
+
+	/**
+	 * @return The World time for a {@link #TICK}, or the player number for a {@link #STATE}
+	 */
+	public int getA(int i) { return a[i]; }
+
+	/**
+	 * @return The timescale bits for a {@link #TICK}, or the sleep state for a {@link #STATE}
+	 */
+	public int getB(int i) { return b[i]; }
+}
@@ -0,0 +1,237 @@
+package com.luffbox.smoothsleep.lib.trace;
+
+import com.luffbox.smoothsleep.SleepIndex;
+import com.luffbox.smoothsleep.SmoothSleep;
+import com.luffbox.smoothsleep.WorldData;
+import com.luffbox.smoothsleep.lib.ConfigHelper;
+import com.luffbox.smoothsleep.lib.Purgeable;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optionally records each night to a {@link NightTrace} file in the 'traces' folder,
+ * so a laggy night can be replayed later through the plugin by the NightHarness in the
+ * tests, or through the {@link com.luffbox.smoothsleep.NightSim} model with /ssdebug replay.
+ * Every change to a player's sleep state (going to bed, getting up, joining, leaving,
+ * changing World, or becoming ignored through gamemode or vanish) and every sleep tick's
+ * time and timescale is recorded.
+ * <p>
+ * Records are written into a fixed number of buffers shared by all Worlds, and full
+ * buffers are written to disk on a thread of their own. If the disk can't keep up,
+ * records are dropped rather than using more memory. A night with a gap in it can't
+ * be replayed, so once a record is dropped the rest of the night isn't recorded and
+ * its trace is deleted when it ends. Only the newest 'night-trace.keep' traces are kept.
+ */
+public class TraceRecorder implements Purgeable {
+
+	private static final int CHUNK_RECORDS = 4096;
+	private static final int CHUNKS = 16;
+	private static final long PURGE_WAIT_MS = 200; // Disabling shouldn't wait long on a slow disk
+
+	private final SmoothSleep pl;
+	private final Map<World, Night> nights = new ConcurrentHashMap<>();
+	private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(CHUNKS);
+	private ExecutorService writer;
+
+	public TraceRecorder(SmoothSleep plugin) {
+		pl = plugin;
+		for (int i = 0; i < CHUNKS; i++) { free.add(ByteBuffer.allocate(CHUNK_RECORDS * NightTrace.RECORD_BYTES)); }
+	}
+
+	/**
+	 * Starts recording a World's night, if traces are enabled, beginning with the state
+	 * of every player already in the World.
+	 * @param wd The World whose night is starting
+	 */
+	public void start(WorldData wd) {
+		if (!pl.data.config.getBoolean(ConfigHelper.GlobalSettingKey.TRACE_ENABLED)) return;
+		World w = wd.getWorld();
+		end(w);
+		String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.ENGLISH).format(new Date());
+		File file = new File(new File(pl.getDataFolder(), "traces"), w.getName() + "-" + stamp + NightTrace.EXT);
+		Night night = new Night(file, w.getName(), w.getGameTime(), wd.getTime());
+		nights.put(w, night);
+		SleepIndex index = wd.getSleepIndex();
+		for (Player plr : index.getPlayers()) { state(w, plr, index.getState(plr)); }
+	}
+
+	/**
+	 * Records a sleep tick.
+	 * @param w The World
+	 * @param time The World time at the start of the tick
+	 * @param timescale The timescale applied
+	 */
+	public void tick(World w, long time, double timescale) {
+		if (nights.isEmpty()) return;
+		Night night = nights.get(w);
+		if (night != null) night.add(NightTrace.TICK, w.getGameTime(), (int) time, Float.floatToIntBits((float) timescale));
+	}
+
+	/**
+	 * Records a change to a player's sleep state.
+	 * @param w The World the player's state is kept for
+	 * @param plr The player
+	 * @param state The player's new state, or null if they're no longer in the World
+	 */
+	public void state(World w, Player plr, SleepIndex.SleepState state) {
+		if (nights.isEmpty()) return;
+		Night night = nights.get(w);
+		if (night != null) night.add(NightTrace.STATE, w.getGameTime(), night.id(plr), state == null ? NightTrace.REMOVED : state.ordinal());
+	}
+
+	/**
+	 * Finishes a World's trace, if it's being recorded.
+	 * @param w The World whose night has ended
+	 */
+	public void end(World w) {
+		Night night = nights.remove(w);
+		if (night != null) night.finish();
+	}
+
+	private synchronized ExecutorService writer() {
+		if (writer == null) {
+			writer = Executors.newSingleThreadExecutor(r -> {
+				Thread t = new Thread(r, "SmoothSleep Trace Writer");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return writer;
+	}
+
+	// Deletes all but the newest traces. Only called on the writer thread.
+	private void rotate(File dir) {
+		int keep = Math.max(1, pl.data.config.getInt(ConfigHelper.GlobalSettingKey.TRACE_KEEP));
+		File[] traces = dir.listFiles((d, name) -> name.endsWith(NightTrace.EXT));
+		if (traces == null || traces.length <= keep) return;
+		Arrays.sort(traces, Comparator.comparingLong(File::lastModified).reversed());
+		for (int i = keep; i < traces.length; i++) {
+			if (!traces[i].delete()) { SmoothSleep.logWarning("Failed to delete old trace: " + traces[i].getName()); }
+		}
+	}
+
+	@Override
+	public void purgeData() {
+		for (World w : nights.keySet()) { end(w); }
+		ExecutorService old;
+		synchronized (this) {
+			old = writer;
+			writer = null;
+		}
+		if (old == null) return;
+		old.shutdown(); // Let the queued writes finish
+		try {
+			if (!old.awaitTermination(PURGE_WAIT_MS, TimeUnit.MILLISECONDS)) { SmoothSleep.logWarning("Timed out writing night traces"); }
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private final class Night {
+		private final File file;
+		private final String world;
+		private final long startTick, startTime, startedAt;
+		private final Map<Player, Integer> ids = new HashMap<>();
+		private ByteBuffer buf;
+		private int dropped = 0;
+		private DataOutputStream out; // Only used on the writer thread
+
+		private Night(File file, String world, long startTick, long startTime) {
+			this.file = file;
+			this.world = world;
+			this.startTick = startTick;
+			this.startTime = startTime;
+			startedAt = System.currentTimeMillis();
+		}
+
+		// Players are numbered in the order they're first seen, so traces don't hold names
+		private synchronized int id(Player plr) { return ids.computeIfAbsent(plr, p -> ids.size()); }
+
+		private synchronized void add(byte type, long gameTime, int a, int b) {
+			if (dropped > 0) { dropped++; return; } // The trace is already unusable
+			if (buf == null || buf.remaining() < NightTrace.RECORD_BYTES) {
+				if (buf != null) flush();
+				buf = free.poll();
+				if (buf == null) { dropped++; return; }
+			}
+			buf.put(type).putInt((int) (gameTime - startTick)).putInt(a).putInt(b);
+		}
+
+		// Hands the current buffer to the writer thread
+		private void flush() {
+			ByteBuffer full = buf;
+			buf = null;
+			full.flip();
+			writer().execute(() -> {
+				try {
+					if (out != null || open()) { out.write(full.array(), 0, full.limit()); }
+				} catch (IOException e) {
+					SmoothSleep.logWarning("Failed to write night trace " + file.getName() + ": " + e.getMessage());
+				} finally {
+					full.clear();
+					free.offer(full);
+				}
+			});
+		}
+
+		private boolean open() throws IOException {
+			File dir = file.getParentFile();
+			if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Can't create " + dir.getPath());
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			NightTrace.writeHeader(out, world, startTime, startedAt);
+			return true;
+		}
+
+		private void finish() {
+			int lost;
+			synchronized (this) {
+				add(NightTrace.END, startTick, 0, 0);
+				lost = dropped;
+				if (lost == 0) {
+					flush();
+				} else if (buf != null) {
+					buf.clear();
+					free.offer(buf);
+					buf = null;
+				}
+			}
+			writer().execute(() -> {
+				if (out != null) {
+					try {
+						out.close();
+					} catch (IOException e) {
+						SmoothSleep.logWarning("Failed to close night trace " + file.getName() + ": " + e.getMessage());
+					}
+					out = null;
+				}
+				if (lost > 0) {
+					SmoothSleep.logWarning("Deleted night trace " + file.getName() + ", the disk couldn't keep up and "
+							+ lost + " records were dropped");
+					if (file.exists() && !file.delete()) { SmoothSleep.logWarning("Failed to delete " + file.getName()); }
+				} else if (file.exists()) {
+					rotate(file.getParentFile());
+				}
+			});
+		}
+	}
+}
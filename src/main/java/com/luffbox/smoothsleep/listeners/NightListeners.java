@@ -2,17 +2,14 @@ package com.luffbox.smoothsleep.listeners;
 
 import com.luffbox.smoothsleep.PlayerData;
 import com.luffbox.smoothsleep.SmoothSleep;
+import com.luffbox.smoothsleep.WorldData;
 import com.luffbox.smoothsleep.events.NightEndEvent;
 import com.luffbox.smoothsleep.events.NightStartEvent;
-import com.luffbox.smoothsleep.lib.ConfigHelper;
-import org.bukkit.Particle;
-import org.bukkit.attribute.Attribute;
-import org.bukkit.attribute.AttributeInstance;
-import org.bukkit.entity.LivingEntity;
 import org.bukkit.entity.Player;
-import org.bukkit.entity.Villager;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.world.TimeSkipEvent;
 
 public class NightListeners implements Listener {
 
@@ -24,27 +21,32 @@ public class NightListeners implements Listener {
 	public void onNightStart(NightStartEvent e) {
 		if (!pl.data.worldEnabled(e.getWorld())) return;
 		e.getWorldData().resetFinishedSleeping();
+		pl.data.traces.start(e.getWorldData());
 		if (e.getWorldData().getPlayers().isEmpty()) return;
-		SmoothSleep.logDebug("Checking sleep-ignore for players in world: " + e.getWorld().getName());
+		SmoothSleep.logDebug("Refreshing permissions for players in world: " + e.getWorld().getName());
 		for (Player pl : e.getWorldData().getPlayers()) {
 			PlayerData pd = this.pl.data.getPlayerData(pl);
-			if (pd != null) pd.updateIgnorePerm();
+			if (pd != null) this.pl.scheduler.runFor(pl, pd::updatePerms);
 		}
+		e.getWorldData().getSleepIndex().reconcile();
 	}
 
 	@EventHandler
 	public void onNightEnd(NightEndEvent e) {
+		pl.data.traces.end(e.getWorld());
+		// Boss bars aren't needed again until next night
+		for (PlayerData pd : e.getWorldData().getPlayerData()) { pl.scheduler.runFor(pd.getPlayer(), pd::releaseBossBar); }
+		e.getWorldData().releaseSharedBar();
 		if (e.getWorldData().getPlayers().isEmpty()) return;
-		if (e.getWorldData().getSettings().getBoolean(ConfigHelper.WorldSettingKey.HEAL_VILLAGERS)) {
-			for (LivingEntity le : e.getWorld().getLivingEntities()) {
-				if (le instanceof Villager) {
-					AttributeInstance attr = le.getAttribute(Attribute.GENERIC_MAX_HEALTH);
-					if (attr != null) {
-						le.setHealth(attr.getValue());
-						e.getWorld().spawnParticle(Particle.HEART, le.getLocation(), 1);
-					}
-				}
-			}
-		}
+		// Villager healing and any other morning effects run a few chunks per tick
+		pl.data.morningEffects.start(e.getWorldData());
+	}
+
+	// Covers /time, vanilla night skipping and other plugins; the boundary estimate is stale after any of them.
+	// The sleep tick's own setTime fires this every tick, but it schedules its own check once it reaches morning.
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void onTimeSkip(TimeSkipEvent e) {
+		WorldData wd = pl.data.getWorldData(e.getWorld());
+		if (wd != null && !wd.isSettingTime()) wd.scheduleBoundaryCheck(1);
 	}
 }
@@ -8,11 +8,9 @@ import com.luffbox.smoothsleep.tasks.UpdateNotifyTask;
 import org.bukkit.World;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.*;
-import org.bukkit.scheduler.BukkitRunnable;
-
-import java.util.Set;
 
 public class PlayerListeners implements Listener {
 
@@ -23,21 +21,33 @@ public class PlayerListeners implements Listener {
 	public void join(PlayerJoinEvent e) {
 		if (pl.data.worldEnabled(e.getPlayer().getWorld())) {
 			pl.data.addPlayer(e.getPlayer()).update();
+			updateSleepState(e.getPlayer());
 		}
 		if (SmoothSleep.hasUpdate && pl.data.config.getBoolean(ConfigHelper.GlobalSettingKey.UPDATE_NOTIFY)) {
 			if (e.getPlayer().hasPermission(SmoothSleep.PERM_NOTIFY)) {
-				UpdateNotifyTask unt = new UpdateNotifyTask(pl, e.getPlayer());
-				unt.runTaskLater(pl, 60);
+				pl.scheduler.runLaterFor(e.getPlayer(), new UpdateNotifyTask(pl, e.getPlayer()), 60);
 			}
 		}
 	}
 
 	@EventHandler
-	public void quit(PlayerQuitEvent e) { pl.data.removePlayer(e.getPlayer()); }
+	public void quit(PlayerQuitEvent e) {
+		WorldData wd = pl.data.getWorldData(e.getPlayer());
+		if (wd != null) {
+			wd.getSleepIndex().remove(e.getPlayer());
+			wd.hideSharedBar(e.getPlayer());
+		}
+		pl.data.removePlayer(e.getPlayer());
+	}
 
 	@EventHandler
 	public void changeWorld(PlayerChangedWorldEvent e) {
 		World to = e.getPlayer().getWorld();
+		WorldData from = pl.data.getWorldData(e.getFrom());
+		if (from != null) {
+			from.getSleepIndex().remove(e.getPlayer());
+			from.hideSharedBar(e.getPlayer());
+		}
 		PlayerData pd = pl.data.getPlayerData(e.getPlayer());
 		boolean needData = pl.data.worldEnabled(to);
 		if (pd == null) { // If true, player data is null
@@ -48,9 +58,19 @@ public class PlayerListeners implements Listener {
 		} else { // If we get here, it means pd isn't null, but we don't need data, so we remove it
 			pl.data.removePlayer(e.getPlayer());
 		}
+		if (needData) { updateSleepState(e.getPlayer()); }
 	}
 
-	@EventHandler(ignoreCancelled = true)
+	// Game mode changes before the event is done, so check spectators on the next tick
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void changeGameMode(PlayerGameModeChangeEvent e) {
+		if (!pl.data.worldEnabled(e.getPlayer().getWorld())) { return; }
+		final Player plr = e.getPlayer();
+		pl.scheduler.runLaterFor(plr, () -> updateSleepState(plr), 1L);
+	}
+
+	// Monitor, so the index isn't updated for a bed event another plugin goes on to cancel
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
 	public void enterBed(PlayerBedEnterEvent e) {
 		if (!pl.isEnabled()) { return; }
 		World w = e.getPlayer().getWorld();
@@ -59,13 +79,16 @@ public class PlayerListeners implements Listener {
 		if (wd == null) { SmoothSleep.logWarning("An error occurred while handing PlayerBedEnterEvent. Missing WorldData."); return; }
 		PlayerData pd = pl.data.getPlayerData(e.getPlayer());
 		if (pd == null) { SmoothSleep.logWarning("An error occurred while handling PlayerBedEnterEvent. Missing PlayerData."); return; }
+		pl.data.wakeQueue.wakeNow(pd); // Finish waking from last time before the timers are reset
+		wd.getSleepIndex().update(e.getPlayer(), true);
 		if (wd.isNight()) {
 			pd.getTimers().resetAll();
+			pd.requestUIUpdate();
 			wd.startSleepTick();
 		}
 	}
 
-	@EventHandler(ignoreCancelled = true)
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
 	public void leaveBed(PlayerBedLeaveEvent e) {
 		if (!pl.isEnabled()) { return; }
 		final World w = e.getPlayer().getWorld();
@@ -74,20 +97,15 @@ public class PlayerListeners implements Listener {
 		if (wd == null) { SmoothSleep.logWarning("An error occurred while handing PlayerBedLeaveEvent. Missing WorldData."); return; }
 		final PlayerData pd = pl.data.getPlayerData(e.getPlayer());
 		if (pd == null) { SmoothSleep.logWarning("An error occurred while handling PlayerBedLeaveEvent. Missing PlayerData."); return; }
+		wd.getSleepIndex().update(e.getPlayer(), false);
 
-		(new BukkitRunnable() {
-			@Override
-			public void run() {
-				pd.wake();
-				Set<Player> sleepers = wd.getSleepers();
-				sleepers.remove(pd.getPlayer());
-				if (sleepers.isEmpty()) {
-					wd.stopSleepTick();
-				} else {
-					SmoothSleep.logDebug("Bed leave: Other players still sleeping");
-				}
-			}
-		}).runTaskLater(pl, 0L);
+		pd.greet();
+		pl.data.wakeQueue.add(pd, wd);
+	}
+
+	private void updateSleepState(Player plr) {
+		WorldData wd = pl.data.getWorldData(plr);
+		if (wd != null) { wd.getSleepIndex().update(plr); }
 	}
 
 }
@@ -0,0 +1,17 @@
+package com.luffbox.smoothsleep.tasks;
+
+import com.luffbox.smoothsleep.lib.morning.MorningEffects;
+import com.luffbox.smoothsleep.lib.scheduler.PluginRunnable;
+
+/**
+ * Runs every tick while {@link MorningEffects} has chunks left to process.
+ */
+public class MorningEffectsTask extends PluginRunnable {
+
+	private final MorningEffects effects;
+
+	public MorningEffectsTask(MorningEffects morningEffects) { effects = morningEffects; }
+
+	@Override
+	public void run() { effects.tick(); }
+}
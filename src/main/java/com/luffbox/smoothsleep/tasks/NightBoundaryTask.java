@@ -0,0 +1,22 @@
+package com.luffbox.smoothsleep.tasks;
+
+import com.luffbox.smoothsleep.WorldData;
+import com.luffbox.smoothsleep.lib.scheduler.PluginRunnable;
+
+/**
+ * A one-shot task scheduled for the tick a World is expected to cross into or
+ * out of the night. It checks the boundary, fires the night start or end event
+ * if it was crossed, then schedules the next check.
+ * @see WorldData#scheduleBoundaryCheck(long)
+ * @see com.luffbox.smoothsleep.events.NightStartEvent
+ * @see com.luffbox.smoothsleep.events.NightEndEvent
+ */
+public class NightBoundaryTask extends PluginRunnable {
+
+	private final WorldData wd;
+
+	public NightBoundaryTask(WorldData worldData) { wd = worldData; }
+
+	@Override
+	public void run() { wd.checkNightBoundary(); }
+}
@@ -0,0 +1,18 @@
+package com.luffbox.smoothsleep.tasks;
+
+import com.luffbox.smoothsleep.lib.particle.ParticleEngine;
+import com.luffbox.smoothsleep.lib.scheduler.PluginRunnable;
+
+/**
+ * Runs every tick while the {@link ParticleEngine} has particles to spawn,
+ * for every player at once.
+ */
+public class ParticleTask extends PluginRunnable {
+
+	private final ParticleEngine engine;
+
+	public ParticleTask(ParticleEngine particleEngine) { engine = particleEngine; }
+
+	@Override
+	public void run() { engine.tick(); }
+}
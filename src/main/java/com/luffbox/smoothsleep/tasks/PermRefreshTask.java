@@ -0,0 +1,19 @@
+package com.luffbox.smoothsleep.tasks;
+
+import com.luffbox.smoothsleep.SmoothSleep;
+import com.luffbox.smoothsleep.lib.scheduler.PluginRunnable;
+
+/**
+ * Optional task that refreshes every player's cached permissions on an interval,
+ * for servers where permissions change without a join or world change.
+ * @see com.luffbox.smoothsleep.lib.PermCache
+ */
+public class PermRefreshTask extends PluginRunnable {
+
+	private final SmoothSleep pl;
+
+	public PermRefreshTask(SmoothSleep plugin) { pl = plugin; }
+
+	@Override
+	public void run() { pl.invalidatePermissions(); }
+}
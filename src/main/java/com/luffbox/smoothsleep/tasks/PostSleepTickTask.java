@@ -3,10 +3,10 @@ package com.luffbox.smoothsleep.tasks;
 import com.luffbox.smoothsleep.PlayerData;
 import com.luffbox.smoothsleep.SmoothSleep;
 import com.luffbox.smoothsleep.WorldData;
-import org.bukkit.scheduler.BukkitRunnable;
+import com.luffbox.smoothsleep.lib.scheduler.PluginRunnable;
 
 // This task is intended to run a single time after the sleep tick task ends in order to update UI elements
-public class PostSleepTickTask extends BukkitRunnable {
+public class PostSleepTickTask extends PluginRunnable {
 
 	private final SmoothSleep pl;
 	private final WorldData wd;
@@ -0,0 +1,18 @@
+package com.luffbox.smoothsleep.tasks;
+
+import com.luffbox.smoothsleep.AsyncRenderer;
+import com.luffbox.smoothsleep.lib.scheduler.PluginRunnable;
+
+/**
+ * Runs every tick while the {@link AsyncRenderer} has text being rendered,
+ * handing finished text back to the players.
+ */
+public class RenderTask extends PluginRunnable {
+
+	private final AsyncRenderer renderer;
+
+	public RenderTask(AsyncRenderer asyncRenderer) { renderer = asyncRenderer; }
+
+	@Override
+	public void run() { renderer.tick(); }
+}
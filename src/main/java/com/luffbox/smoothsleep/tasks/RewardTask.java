@@ -0,0 +1,17 @@
+package com.luffbox.smoothsleep.tasks;
+
+import com.luffbox.smoothsleep.lib.reward.RewardQueue;
+import com.luffbox.smoothsleep.lib.scheduler.PluginRunnable;
+
+/**
+ * Runs every tick while the {@link RewardQueue} has rewards to give out.
+ */
+public class RewardTask extends PluginRunnable {
+
+	private final RewardQueue queue;
+
+	public RewardTask(RewardQueue rewardQueue) { queue = rewardQueue; }
+
+	@Override
+	public void run() { queue.tick(); }
+}
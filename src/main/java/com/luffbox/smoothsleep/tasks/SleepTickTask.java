@@ -3,16 +3,18 @@ package com.luffbox.smoothsleep.tasks;
 import com.luffbox.smoothsleep.PlayerData;
 import com.luffbox.smoothsleep.SmoothSleep;
 import com.luffbox.smoothsleep.WorldData;
-import org.bukkit.entity.Player;
-import org.bukkit.scheduler.BukkitRunnable;
-
-import java.util.Set;
+import com.luffbox.smoothsleep.lib.profiler.Phase;
+import com.luffbox.smoothsleep.lib.profiler.TickProfiler;
+import com.luffbox.smoothsleep.lib.scheduler.PluginRunnable;
 
 /**
  * This task only runs during the night while players are sleeping.
  * It handles stepping ticks and cancels itself when it's done.
+ * Each run calls {@link WorldData#timestep()}, which captures the single
+ * {@link com.luffbox.smoothsleep.SleepSnapshot} shared by every player's UI update.
+ * On Folia it runs on the global region thread.
  */
-public class SleepTickTask extends BukkitRunnable {
+public class SleepTickTask extends PluginRunnable {
 
 	private final SmoothSleep pl;
 	private final WorldData wd;
@@ -24,18 +26,24 @@ public class SleepTickTask extends BukkitRunnable {
 
 	@Override
 	public void run() {
-		Set<Player> sleepers = wd.getSleepers();
-		if (!pl.data.isPluginEnabled() || sleepers.isEmpty()) {
-			for (PlayerData pd : wd.getPlayerData()) {
-				if (pd == null) continue;
-				pd.clearActionBar();
-				pd.hideBossBar();
+		long start = TickProfiler.start();
+		try {
+			if (!pl.data.isPluginEnabled() || !wd.hasSleepers()) {
+				for (PlayerData pd : wd.getPlayerData()) {
+					if (pd == null) continue;
+					pl.scheduler.runFor(pd.getPlayer(), () -> {
+						pd.clearActionBar();
+						pd.hideBossBar();
+					});
+				}
+				cancel();
+				return;
 			}
-			cancel();
-			return;
+			boolean isNight = wd.isNight();
+			if (isNight) { wd.timestep(); }
+			if (!isNight || !wd.hasSleepers()) { cancel(); }
+		} finally {
+			TickProfiler.stop(Phase.SLEEP_TICK, wd.getWorld(), start);
 		}
-		boolean isNight = wd.isNight();
-		if (isNight) { wd.timestep(); }
-		if (!isNight || sleepers.isEmpty()) { cancel(); }
 	}
 }
@@ -1,11 +1,11 @@
 package com.luffbox.smoothsleep.tasks;
 
 import com.luffbox.smoothsleep.SmoothSleep;
+import com.luffbox.smoothsleep.lib.scheduler.PluginRunnable;
 import org.bukkit.ChatColor;
 import org.bukkit.entity.Player;
-import org.bukkit.scheduler.BukkitRunnable;
 
-public class UpdateNotifyTask extends BukkitRunnable {
+public class UpdateNotifyTask extends PluginRunnable {
 
 	private final SmoothSleep pl;
 	private final Player plr;
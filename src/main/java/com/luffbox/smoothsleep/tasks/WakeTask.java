@@ -0,0 +1,17 @@
+package com.luffbox.smoothsleep.tasks;
+
+import com.luffbox.smoothsleep.WakeQueue;
+import com.luffbox.smoothsleep.lib.scheduler.PluginRunnable;
+
+/**
+ * Runs every tick while the {@link WakeQueue} has players waiting to be woken.
+ */
+public class WakeTask extends PluginRunnable {
+
+	private final WakeQueue queue;
+
+	public WakeTask(WakeQueue wakeQueue) { queue = wakeQueue; }
+
+	@Override
+	public void run() { queue.tick(); }
+}
@@ -0,0 +1,460 @@
+package com.luffbox.smoothsleep;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import be.seeseemelk.mockbukkit.ServerMock;
+import be.seeseemelk.mockbukkit.WorldMock;
+import be.seeseemelk.mockbukkit.entity.PlayerMock;
+import com.luffbox.smoothsleep.lib.trace.NightTrace;
+import net.md_5.bungee.api.ChatMessageType;
+import net.md_5.bungee.api.chat.BaseComponent;
+import org.bukkit.Bukkit;
+import org.bukkit.GameMode;
+import org.bukkit.Material;
+import org.bukkit.Particle;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.event.player.PlayerBedEnterEvent;
+import org.bukkit.event.player.PlayerBedLeaveEvent;
+import org.bukkit.event.world.TimeSkipEvent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Boots SmoothSleep on a MockBukkit server and plays out a night through the plugin
+ * itself: players join, go to bed and get up through the real events, and each server
+ * tick runs the plugin's scheduled tasks, so the listeners, sleep index, sleep tick,
+ * {@link WorldData} and {@link PlayerData} all do what they would on a server.
+ * <p>
+ * The night is driven from {@link SmoothSleep#SLEEP_TICKS_START} until the World
+ * reaches {@link SmoothSleep#SLEEP_TICKS_END}, and the CPU time and allocations of
+ * the thread driving it are measured along with the titles, action bars and particles
+ * sent to players. The CPU time includes MockBukkit's scheduler and event dispatch,
+ * which a real server would also be paying for. Async rendering is off unless the
+ * config given turns it on, so all of the plugin's work is on the measured thread.
+ * <p>
+ * A night recorded by the {@link com.luffbox.smoothsleep.lib.trace.TraceRecorder} can be
+ * played through the plugin with {@link #replay(NightTrace)}, which makes each recorded
+ * change to a player's sleep state with the events that would have caused it.
+ * <p>
+ * Run with {@code mvn test -Dtest=NightHarnessTest}, adding {@code -Dsmoothsleep.players=N}
+ * and {@code -Dsmoothsleep.sleep=0-1} for a bigger night, or {@code -Dsmoothsleep.trace=file}
+ * to replay a night recorded on a server.
+ */
+public class NightHarness implements AutoCloseable {
+
+	public static final String WORLD = "world";
+	private static final long EVENING = 20L; // Ticks before the night to join players in
+	private static final String TRACE_WRITER = "SmoothSleep Trace Writer";
+	private static final long TRACE_WAIT_MS = 5000L;
+
+	// Kept out of the way of the night being measured
+	private static final Map<String, Object> DEFAULTS = new LinkedHashMap<String, Object>() {{
+		put("enable-stats", false);
+		put("enable-update-check", false);
+		put("async-rendering.enabled", false);
+		put("logging-settings.log-info", false);
+	}};
+
+	/**
+	 * Everything sent to the harness's players.
+	 */
+	public static final class Sends {
+		public long titles, actionBars, particles;
+	}
+
+	public static final class Result {
+		public long realTicks, acceleratedTicks, cpuNanos, allocBytes, titles, actionBars, particles;
+		public int peakSleepers;
+		public double maxTimescale, meanTimescale;
+		public boolean reachedMorning;
+		public long recordedTicks = -1, timescaleMismatches; // Only set when replaying
+
+		public List<String> describe() {
+			List<String> lines = new ArrayList<>();
+			lines.add(String.format(Locale.ENGLISH, "Night length: %d ticks (%.1fs), vanilla %d ticks%s", realTicks, realTicks / 20.0,
+					SmoothSleep.SLEEP_TICKS_DURA, reachedMorning ? "" : ", stopped before morning"));
+			lines.add(String.format(Locale.ENGLISH, "Accelerated ticks: %d, peak sleepers: %d, timescale mean %.2f max %.2f",
+					acceleratedTicks, peakSleepers, meanTimescale, maxTimescale));
+			lines.add(String.format(Locale.ENGLISH, "CPU: %.2fms total, %.2f\u00b5s per tick",
+					cpuNanos / 1_000_000.0, realTicks == 0 ? 0.0 : cpuNanos / 1000.0 / realTicks));
+			lines.add("Allocated: " + (allocBytes < 0 ? "?" : allocBytes + " bytes") + ", sent " + titles + " titles, "
+					+ actionBars + " action bars and " + particles + " particles");
+			if (recordedTicks >= 0) {
+				lines.add("Recorded night: last sleep tick at " + recordedTicks + " ticks, timescale differed on "
+						+ timescaleMismatches + " ticks");
+			}
+			return lines;
+		}
+	}
+
+	/**
+	 * A World whose time only moves when the harness ticks it, the same as a server
+	 * would. Time set by plugins fires a {@link TimeSkipEvent} like it does on Paper.
+	 */
+	public static final class HarnessWorld extends WorldMock {
+		private long fullTime, gameTime;
+
+		HarnessWorld(String name) {
+			super(Material.GRASS_BLOCK, 3);
+			setName(name);
+			setEnvironment(World.Environment.NORMAL);
+		}
+
+		// One server tick, which isn't a skip
+		void advance() {
+			fullTime++;
+			gameTime++;
+		}
+
+		@Override
+		public long getGameTime() { return gameTime; }
+
+		@Override
+		public long getFullTime() { return fullTime; }
+
+		@Override
+		public void setFullTime(long time) {
+			TimeSkipEvent e = new TimeSkipEvent(this, TimeSkipEvent.SkipReason.CUSTOM, time - fullTime);
+			Bukkit.getPluginManager().callEvent(e);
+			if (!e.isCancelled()) { fullTime += e.getSkipAmount(); }
+		}
+
+		@Override
+		public long getTime() { return fullTime % 24000L; }
+
+		@Override
+		public void setTime(long time) {
+			long margin = (time - fullTime) % 24000L;
+			if (margin < 0) margin += 24000L;
+			setFullTime(fullTime + margin);
+		}
+	}
+
+	/**
+	 * A player that can be put to bed, and counts what it's sent instead of keeping it.
+	 */
+	public static final class HarnessPlayer extends PlayerMock {
+		private final Sends sends;
+		private final Player.Spigot spigot;
+		private boolean sleeping, ignored;
+
+		HarnessPlayer(ServerMock server, String name, Sends sends) {
+			super(server, name);
+			this.sends = sends;
+			spigot = new Player.Spigot() {
+				@Override
+				public void sendMessage(ChatMessageType position, BaseComponent... components) {
+					if (position == ChatMessageType.ACTION_BAR) { sends.actionBars++; }
+				}
+			};
+		}
+
+		@Override
+		public boolean isSleeping() { return sleeping; }
+
+		@Override
+		public boolean isSleepingIgnored() { return ignored; }
+
+		@Override
+		public void setSleepingIgnored(boolean ignore) { ignored = ignore; }
+
+		@Override
+		public Player.Spigot spigot() { return spigot; }
+
+		@Override
+		public void sendTitle(String title, String subtitle, int fadeIn, int stay, int fadeOut) { sends.titles++; }
+
+		@Override
+		@SuppressWarnings("deprecation")
+		public void sendActionBar(String message) { sends.actionBars++; }
+
+		@Override
+		public void spawnParticle(Particle particle, double x, double y, double z, int count,
+								  double offsetX, double offsetY, double offsetZ) {
+			sends.particles += count;
+		}
+	}
+
+	private final ServerMock server;
+	private final HarnessWorld world;
+	private final SmoothSleep pl;
+	private final Sends sends = new Sends();
+	private final List<HarnessPlayer> players = new ArrayList<>();
+
+	/**
+	 * Starts a server with one World in the evening and enables SmoothSleep on it.
+	 * @param config Config values to set, by path, on top of the default config
+	 */
+	public NightHarness(Map<String, Object> config) {
+		server = MockBukkit.mock();
+		world = new HarnessWorld(WORLD);
+		server.addWorld(world);
+		world.setTime(SmoothSleep.SLEEP_TICKS_START - EVENING);
+		pl = (SmoothSleep) server.getPluginManager().loadPlugin(SmoothSleep.class, new Object[0]);
+		writeConfig(config);
+		server.getPluginManager().enablePlugin(pl);
+	}
+
+	public NightHarness() { this(Collections.emptyMap()); }
+
+	// The plugin reads its config from disk when it's enabled, so the changes have to be saved first
+	private void writeConfig(Map<String, Object> config) {
+		pl.saveDefaultConfig();
+		File file = new File(pl.getDataFolder(), "config.yml");
+		YamlConfiguration yml = YamlConfiguration.loadConfiguration(file);
+		DEFAULTS.forEach(yml::set);
+		config.forEach(yml::set);
+		try {
+			yml.save(file);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public SmoothSleep getPlugin() { return pl; }
+	public HarnessWorld getWorld() { return world; }
+	public WorldData getWorldData() { return pl.data.getWorldData(world); }
+	public Sends getSends() { return sends; }
+
+	/**
+	 * Joins a new player to the World. Players are given the reward permission,
+	 * which plugin.yml means them to have by default.
+	 * @return The player
+	 */
+	public HarnessPlayer join() {
+		HarnessPlayer plr = new HarnessPlayer(server, "Player" + players.size(), sends);
+		players.add(plr);
+		plr.addAttachment(pl, SmoothSleep.PERM_SLEEP_REWARD, true);
+		server.addPlayer(plr);
+		return plr;
+	}
+
+	public void quit(HarnessPlayer plr) {
+		plr.sleeping = false;
+		plr.disconnect();
+	}
+
+	public void rejoin(HarnessPlayer plr) {
+		plr.addAttachment(pl, SmoothSleep.PERM_SLEEP_REWARD, true); // Disconnecting clears attachments
+		plr.reconnect();
+	}
+
+	/**
+	 * Puts the player to bed. The event is fired before the player is sleeping, as it is on a server.
+	 * @return False if a listener kept the player out of bed
+	 */
+	public boolean enterBed(HarnessPlayer plr) {
+		PlayerBedEnterEvent e = new PlayerBedEnterEvent(plr, bed(), PlayerBedEnterEvent.BedEnterResult.OK);
+		server.getPluginManager().callEvent(e);
+		if (e.useBed() == Event.Result.DENY) return false;
+		plr.sleeping = true;
+		return true;
+	}
+
+	public void leaveBed(HarnessPlayer plr) {
+		server.getPluginManager().callEvent(new PlayerBedLeaveEvent(plr, bed(), false));
+		plr.sleeping = false;
+	}
+
+	private Block bed() { return world.getBlockAt(0, 64, 0); }
+
+	/**
+	 * Runs one server tick: the World's time moves on, then every task due runs.
+	 */
+	public void tick() {
+		world.advance();
+		server.getScheduler().performOneTick();
+	}
+
+	/**
+	 * Plays out a night. Players are scripted with the same random draws as
+	 * {@link NightSim#run}, so the model can be checked against the plugin.
+	 * @param sc The players and when they sleep
+	 * @return What the night took
+	 */
+	public Result night(NightSim.Scenario sc) {
+		int limit = (int) (SmoothSleep.SLEEP_TICKS_DURA * 2);
+		Map<Integer, List<Runnable>> actions = new HashMap<>();
+		List<HarnessPlayer> joined = new ArrayList<>();
+		for (int i = 0; i < sc.players; i++) { joined.add(join()); }
+		Random rnd = new Random(sc.seed);
+		int sleepers = (int) Math.round(sc.players * Math.max(0.0, Math.min(1.0, sc.sleepFraction)));
+		int window = Math.max(1, Math.min(limit, sc.enterWindow));
+		for (int i = 0; i < sleepers; i++) {
+			HarnessPlayer plr = joined.get(i);
+			int enter = rnd.nextInt(window);
+			at(actions, enter, () -> enterBed(plr));
+			if (rnd.nextDouble() < sc.leaveFraction) {
+				int leave = enter + 1 + rnd.nextInt(window);
+				if (leave < limit) { at(actions, leave, () -> leaveBed(plr)); }
+			}
+		}
+		return play(actions, limit, null);
+	}
+
+	/**
+	 * Plays a recorded night through the plugin. Players join when they're first seen,
+	 * and each recorded state change is made the way a player would make it: going to
+	 * bed or getting up, switching to spectator for an ignored player, and quitting for
+	 * a player who left the World (which is also how a World change is played back).
+	 * Replaying with the settings the night was recorded with should give the same night
+	 * length and timescales.
+	 * @param trace The recorded night
+	 * @return What the night took, and how it compares to the recording
+	 * @throws IllegalArgumentException If the trace dropped records, as its player counts can't be trusted
+	 */
+	public Result replay(NightTrace trace) {
+		if (trace.getDropped() > 0) {
+			throw new IllegalArgumentException("The trace dropped " + trace.getDropped() + " records while recording");
+		}
+		Map<Integer, List<Runnable>> actions = new HashMap<>();
+		Map<Integer, Float> recorded = new HashMap<>();
+		Map<Integer, Integer> states = new HashMap<>();
+		Map<Integer, HarnessPlayer> byId = new HashMap<>();
+		int last = 0, recordedTicks = -1;
+		for (int i = 0; i < trace.size(); i++) {
+			int tick = Math.max(0, trace.getTick(i));
+			last = Math.max(last, tick);
+			if (trace.getType(i) == NightTrace.TICK) {
+				recorded.put(tick, Float.intBitsToFloat(trace.getB(i)));
+				recordedTicks = tick + 1;
+			} else if (trace.getType(i) == NightTrace.STATE) {
+				int id = trace.getA(i), state = trace.getB(i);
+				Integer old = state == NightTrace.REMOVED ? states.remove(id) : states.put(id, state);
+				if (old == null && state == NightTrace.REMOVED) continue;
+				if (old == null && tick == 0 && !byId.containsKey(id)) { // In the World when the night started
+					byId.put(id, join());
+					if (state != SleepIndex.SleepState.AWAKE.ordinal()) { at(actions, 0, () -> change(byId.get(id), null, state)); }
+					continue;
+				}
+				at(actions, tick, () -> {
+					HarnessPlayer plr = byId.get(id);
+					if (old == null) {
+						if (plr == null) { byId.put(id, join()); }
+						else { rejoin(plr); }
+					}
+					change(byId.get(id), old, state);
+				});
+			}
+		}
+		Result r = play(actions, Math.max(last + 1, (int) (SmoothSleep.SLEEP_TICKS_DURA * 2)), recorded);
+		r.recordedTicks = recordedTicks;
+		return r;
+	}
+
+	// Takes a player from one recorded state to another, from awake if they just joined
+	private void change(HarnessPlayer plr, Integer from, int to) {
+		if (to == NightTrace.REMOVED) {
+			quit(plr);
+			return;
+		}
+		if (from != null && from == to) return;
+		if (from != null && from == SleepIndex.SleepState.SLEEPING.ordinal()) { leaveBed(plr); }
+		if (from != null && from == SleepIndex.SleepState.IGNORED.ordinal()) { plr.setGameMode(GameMode.SURVIVAL); }
+		if (to == SleepIndex.SleepState.IGNORED.ordinal()) { plr.setGameMode(GameMode.SPECTATOR); }
+		if (to == SleepIndex.SleepState.SLEEPING.ordinal()) { enterBed(plr); }
+	}
+
+	private static void at(Map<Integer, List<Runnable>> actions, int tick, Runnable action) {
+		actions.computeIfAbsent(tick, t -> new ArrayList<>()).add(action);
+	}
+
+	/**
+	 * Ticks through the evening to the start of the night, then through the night,
+	 * running each tick's actions before it.
+	 * @param actions What players do, by ticks since the night started
+	 * @param limit How many ticks to give up after if it isn't morning yet
+	 * @param recorded The timescale of each recorded sleep tick, or null if not replaying
+	 */
+	private Result play(Map<Integer, List<Runnable>> actions, int limit, Map<Integer, Float> recorded) {
+		while (!WorldData.isNight(world.getTime())) { tick(); }
+		WorldData wd = getWorldData();
+		long nightStart = world.getGameTime();
+
+		Result r = new Result();
+		long titles = sends.titles, actionBars = sends.actionBars, particles = sends.particles;
+		ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+		boolean cpu = mx.isCurrentThreadCpuTimeSupported();
+		long cpuStart = cpu ? mx.getCurrentThreadCpuTime() : System.nanoTime();
+		long allocStart = allocatedBytes();
+
+		double totalScale = 0;
+		int now = 0;
+		while (now < limit && world.getTime() < SmoothSleep.SLEEP_TICKS_END) {
+			List<Runnable> due = actions.get(now);
+			if (due != null) { due.forEach(Runnable::run); }
+			long before = world.getTime();
+			tick();
+			now = (int) (world.getGameTime() - nightStart);
+			r.peakSleepers = Math.max(r.peakSleepers, wd.getSleeperCount());
+			boolean accelerated = world.getTime() - before > 1; // Only the sleep tick moves time on faster
+			if (accelerated) {
+				r.acceleratedTicks++;
+				totalScale += wd.getTimescale();
+				r.maxTimescale = Math.max(r.maxTimescale, wd.getTimescale());
+			}
+			Float rec = recorded == null ? null : recorded.get(now);
+			if (recorded != null && (rec != null || accelerated)) {
+				if (rec == null || !accelerated || Math.abs(rec - (float) wd.getTimescale()) > 0.001f) { r.timescaleMismatches++; }
+			}
+		}
+
+		r.cpuNanos = (cpu ? mx.getCurrentThreadCpuTime() : System.nanoTime()) - cpuStart;
+		long allocEnd = allocatedBytes();
+		r.allocBytes = allocStart < 0 ? -1 : allocEnd - allocStart;
+		r.realTicks = now;
+		r.reachedMorning = world.getTime() >= SmoothSleep.SLEEP_TICKS_END;
+		r.meanTimescale = r.acceleratedTicks == 0 ? 0 : totalScale / r.acceleratedTicks;
+		r.titles = sends.titles - titles;
+		r.actionBars = sends.actionBars - actionBars;
+		r.particles = sends.particles - particles;
+		return r;
+	}
+
+	/**
+	 * Ends the night's trace and waits for it to be written.
+	 * @return The trace, read back from disk
+	 * @throws IOException If the trace can't be read
+	 * @throws IllegalStateException If there's no trace, or it took too long to write
+	 */
+	public NightTrace awaitTrace() throws IOException, InterruptedException {
+		pl.data.traces.purgeData(); // Ends the trace and shuts the writer down once it's done
+		long until = System.currentTimeMillis() + TRACE_WAIT_MS;
+		while (Thread.getAllStackTraces().keySet().stream().anyMatch(t -> t.getName().equals(TRACE_WRITER) && t.isAlive())) {
+			if (System.currentTimeMillis() > until) throw new IllegalStateException("The trace took too long to write");
+			Thread.sleep(10L);
+		}
+		File[] traces = new File(pl.getDataFolder(), "traces").listFiles((d, name) -> name.endsWith(NightTrace.EXT));
+		if (traces == null || traces.length != 1) throw new IllegalStateException("Expected one trace, found " + (traces == null ? 0 : traces.length));
+		return NightTrace.read(traces[0].toPath());
+	}
+
+	/**
+	 * @return The bytes this thread has allocated so far, or -1 if the JVM can't tell
+	 */
+	static long allocatedBytes() {
+		ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+		if (!(mx instanceof com.sun.management.ThreadMXBean)) return -1;
+		com.sun.management.ThreadMXBean sunMx = (com.sun.management.ThreadMXBean) mx;
+		if (!sunMx.isThreadAllocatedMemorySupported() || !sunMx.isThreadAllocatedMemoryEnabled()) return -1;
+		return sunMx.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	@Override
+	public void close() { MockBukkit.unmock(); }
+}
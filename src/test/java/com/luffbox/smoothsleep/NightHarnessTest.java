@@ -0,0 +1,80 @@
+package com.luffbox.smoothsleep;
+
+import com.luffbox.smoothsleep.lib.trace.NightTrace;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Paths;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class NightHarnessTest {
+
+	private static NightSim.Scenario scenario() {
+		NightSim.Scenario sc = new NightSim.Scenario();
+		sc.players = Integer.getInteger("smoothsleep.players", 20);
+		sc.sleepFraction = Double.parseDouble(System.getProperty("smoothsleep.sleep", "0.5"));
+		sc.leaveFraction = 0.1;
+		return sc;
+	}
+
+	@Test
+	void nightReachesMorning() {
+		try (NightHarness h = new NightHarness()) {
+			NightHarness.Result r = h.night(scenario());
+			r.describe().forEach(System.out::println);
+			assertTrue(r.reachedMorning, "The night never ended");
+			assertTrue(r.realTicks < SmoothSleep.SLEEP_TICKS_DURA, "The night wasn't sped up");
+			assertTrue(r.acceleratedTicks > 0);
+			assertTrue(r.titles > 0, "No titles were sent");
+			assertTrue(r.actionBars > 0, "No action bars were sent");
+		}
+	}
+
+	@Test
+	void modelMatchesPlugin() {
+		NightSim.Scenario sc = scenario();
+		try (NightHarness h = new NightHarness()) {
+			NightSim.Result model = NightSim.run(NightSim.Settings.of(h.getWorldData().getSettings(), h.getPlugin().data.baseTimeSpeed), sc);
+			NightHarness.Result r = h.night(sc);
+			long diff = Math.abs(r.realTicks - model.realTicks);
+			assertTrue(diff <= Math.max(5, model.realTicks / 20),
+					"Plugin took " + r.realTicks + " ticks, the model " + model.realTicks);
+		}
+	}
+
+	@Test
+	void replayMatchesRecording() throws Exception {
+		NightHarness.Result recorded;
+		NightTrace trace;
+		try (NightHarness h = new NightHarness(Collections.<String, Object>singletonMap("night-trace.enabled", true))) {
+			recorded = h.night(scenario());
+			trace = h.awaitTrace();
+		}
+		assertEquals(0, trace.getDropped());
+		try (NightHarness h = new NightHarness()) {
+			NightHarness.Result r = h.replay(trace);
+			r.describe().forEach(System.out::println);
+			assertTrue(r.reachedMorning, "The replayed night never ended");
+			assertTrue(Math.abs(r.realTicks - recorded.realTicks) <= 1,
+					"Replay took " + r.realTicks + " ticks, the recording " + recorded.realTicks);
+			assertTrue(r.timescaleMismatches <= 2, "Timescale differed on " + r.timescaleMismatches + " ticks");
+		}
+	}
+
+	// Replays a night recorded on a server, with the default config
+	@Test
+	void replayTraceFile() throws Exception {
+		String file = System.getProperty("smoothsleep.trace");
+		assumeTrue(file != null, "Set -Dsmoothsleep.trace to replay a recorded night");
+		NightTrace trace = NightTrace.read(Paths.get(file));
+		try (NightHarness h = new NightHarness()) {
+			System.out.println("Replaying " + trace.getWorld() + " from " + trace.size() + " records");
+			NightHarness.Result r = h.replay(trace);
+			r.describe().forEach(System.out::println);
+			assertTrue(r.realTicks > 0);
+		}
+	}
+}